@@ -0,0 +1,205 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.parser.ModelParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the three phases of the diagram creation, separately and end to end, and the update after some cards are resized.
+ * Allocation rate is reported by the 'gc' profiler configured in build.gradle.
+ * The steady layout also counts the bytes allocated by placeNodes() alone, that should stay zero.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+
+    /**
+     * The tree and the settings of the diagram.
+     */
+    @State(Scope.Thread)
+    public static class Layout {
+
+        @Param({"fixture", "10000"})
+        public String tree; // The genealogical tree to lay out: 'fixture' is the test resource tree.ged, a number is the size of a generated tree
+
+        @Param({"3"})
+        public int maxAncestors;
+        @Param({"2"})
+        public int maxGreatUncles;
+        @Param({"3"})
+        public int maxDescendants;
+        @Param({"2"})
+        public int maxSiblingsNephews;
+        @Param({"2"})
+        public int maxUnclesCousins;
+        @Param({"true"})
+        public boolean displaySpouses;
+        @Param({"true"})
+        public boolean displayNumbers;
+        @Param({"false"})
+        public boolean parallel; // Places the ancestor columns in parallel on the common pool
+
+        Gedcom gedcom;
+        Person fulcrum;
+        Graph graph;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            if (tree.equals("fixture")) {
+                try (InputStream stream = GraphBenchmark.class.getResourceAsStream("/tree.ged")) {
+                    gedcom = new ModelParser().parseGedcom(stream);
+                }
+                gedcom.createIndexes();
+                fulcrum = gedcom.getPerson("I1");
+            } else {
+                TreeGenerator generator = new TreeGenerator().persons(Integer.parseInt(tree));
+                gedcom = generator.generate();
+                fulcrum = generator.getFulcrum();
+            }
+            graph = new Graph();
+            graph.setGedcom(gedcom).maxAncestors(maxAncestors).maxGreatUncles(maxGreatUncles).displaySpouses(displaySpouses)
+                    .maxDescendants(maxDescendants).maxSiblingsNephews(maxSiblingsNephews).maxUnclesCousins(maxUnclesCousins)
+                    .displayNumbers(displayNumbers);
+            graph.setMaxBitmapSize(1000); // So placeNodes() also distributes the lines
+            if (parallel)
+                graph.setForkJoinPool(ForkJoinPool.commonPool());
+            graph.getGedcomIndex(); // Built once per Gedcom, not part of the measured layout
+        }
+
+        /**
+         * Gives the cards a size, as the graphical implementation would do after startFrom().
+         */
+        void measureCards() {
+            for (PersonNode personNode : graph.getPersonNodes()) {
+                personNode.width = personNode.mini ? 30 : 100 + personNode.person.getId().length() * 5;
+                personNode.height = personNode.mini ? 30 : 100;
+            }
+        }
+    }
+
+    /**
+     * Graph ready to execute initNodes().
+     */
+    public static class Started extends Layout {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            graph.startFrom(fulcrum);
+            measureCards();
+        }
+    }
+
+    /**
+     * Graph ready to execute placeNodes().
+     */
+    public static class Initialized extends Layout {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            graph.startFrom(fulcrum);
+            measureCards();
+            graph.initNodes();
+        }
+    }
+
+    /**
+     * Graph with nodes already placed, and the first regular cards of each row to be enlarged.
+     */
+    public static class Placed extends Layout {
+        @Setup(Level.Invocation)
+        public void prepare() {
+            graph.startFrom(fulcrum);
+            measureCards();
+            graph.initNodes();
+            graph.placeNodes();
+            int generation = Integer.MIN_VALUE;
+            for (PersonNode personNode : graph.getPersonNodes()) {
+                if (!personNode.mini && personNode.generation != generation) {
+                    generation = personNode.generation;
+                    graph.resizeNode(personNode, personNode.width + 50, personNode.height + 20);
+                }
+            }
+        }
+    }
+
+    /**
+     * Graph initialized once, to repeat placeNodes() on the same nodes as a diagram laid out again.
+     */
+    public static class Steady extends Layout {
+        @Setup(Level.Iteration)
+        public void prepare() {
+            graph.startFrom(fulcrum);
+            measureCards();
+            graph.initNodes();
+        }
+    }
+
+    /**
+     * Bytes allocated by the benchmark thread inside the measured calls, reported beside the results.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Allocations {
+        public long allocatedBytes; // Total of the iteration
+
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        private final long threadId = Thread.currentThread().getId();
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            allocatedBytes = 0;
+        }
+
+        long allocated() {
+            return threads.getThreadAllocatedBytes(threadId);
+        }
+    }
+
+    @Benchmark
+    public int startFrom(Layout layout) {
+        layout.graph.startFrom(layout.fulcrum);
+        return layout.graph.getPersonNodes().size();
+    }
+
+    @Benchmark
+    public int initNodes(Started started) {
+        started.graph.initNodes();
+        return started.graph.getBonds().size();
+    }
+
+    @Benchmark
+    public float placeNodes(Initialized initialized) {
+        initialized.graph.placeNodes(); // distributeLines() included
+        return initialized.graph.getWidth();
+    }
+
+    @Benchmark
+    public float placeNodesSteady(Steady steady, Allocations allocations) {
+        long before = allocations.allocated();
+        steady.graph.placeNodes();
+        allocations.allocatedBytes += allocations.allocated() - before;
+        return steady.graph.getWidth();
+    }
+
+    @Benchmark
+    public float placeResizedNodes(Placed placed) {
+        placed.graph.placeResizedNodes();
+        return placed.graph.getWidth();
+    }
+
+    @Benchmark
+    public float endToEnd(Layout layout) {
+        layout.graph.startFrom(layout.fulcrum);
+        layout.measureCards();
+        layout.graph.initNodes();
+        layout.graph.placeNodes();
+        return layout.graph.getWidth();
+    }
+}
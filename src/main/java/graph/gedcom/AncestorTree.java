@@ -0,0 +1,200 @@
+package graph.gedcom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tree of the ancestor unions above the fulcrum generation, to place the ancestor columns in parallel.
+ * Each union of the tree is moved only by its parent union, and moves only the unions of its own subtree:
+ * so paternal and maternal columns, and recursively their sub-columns, can be processed in any order with the same result.
+ * The boundary between two columns is resolved by their common union, that is processed before them.
+ */
+class AncestorTree {
+
+    static final int FORK_THRESHOLD = 16; // Min number of unions of a subtree to be processed by a separate task
+
+    private final boolean origins; // True to separate the origins of each union, false to place the ancestors above each union
+    private final Map<Union, List<Group>> groups = new HashMap<>(); // Groups of each union, ordered as in their row
+    private final Map<Union, List<Union>> children = new HashMap<>(); // Unions moved by each union
+    private final Map<Union, Union> parents = new HashMap<>();
+    private final Map<Union, Integer> sizes = new HashMap<>(); // Number of unions of each subtree
+    private final List<Union> roots = new ArrayList<>();
+
+    private AncestorTree(boolean origins) {
+        this.origins = origins;
+    }
+
+    /**
+     * Builds the tree of the unions placed by Group.placeAncestors() in the rows above the fulcrum generation.
+     *
+     * @return The tree, or null if some union is placed by more than one union (e.g. in case of married siblings)
+     */
+    static AncestorTree forAncestors(List<GroupRow> groupRows, List<UnionRow> unionRows, int maxAbove) {
+        AncestorTree tree = new AncestorTree(false);
+        for (int r = 0; r < maxAbove; r++) {
+            for (Group group : groupRows.get(r)) {
+                if (group.list.isEmpty())
+                    continue;
+                Union union = group.list.get(0).union;
+                tree.getGroups(union).add(group);
+                if (group.origin != null && group.origin.union != null && !tree.addChild(union, group.origin.union))
+                    return null;
+            }
+        }
+        return tree.complete(unionRows, maxAbove);
+    }
+
+    /**
+     * Builds the tree of the unions moved by Union.placeOriginsAscending().
+     *
+     * @return The tree, or null if some union is the origin of more than one union
+     */
+    static AncestorTree forOrigins(List<UnionRow> unionRows, int maxAbove) {
+        AncestorTree tree = new AncestorTree(true);
+        for (int r = 0; r < maxAbove; r++) {
+            for (Union union : unionRows.get(r)) {
+                for (Node origin : union.getOrigins()) {
+                    if (origin.union != null && !tree.addChild(union, origin.union))
+                        return null;
+                }
+            }
+        }
+        return tree.complete(unionRows, maxAbove);
+    }
+
+    // Only while building the tree: the tasks of process() read the maps without modifying them
+
+    private List<Group> getGroups(Union union) {
+        List<Group> list = groups.get(union);
+        if (list == null) {
+            list = new ArrayList<>();
+            groups.put(union, list);
+        }
+        return list;
+    }
+
+    private List<Union> getChildren(Union union) {
+        List<Union> list = children.get(union);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            children.put(union, list);
+        }
+        return list;
+    }
+
+    private List<Union> childrenOf(Union union) {
+        List<Union> list = children.get(union);
+        return list != null ? list : Collections.<Union>emptyList();
+    }
+
+    /**
+     * @return False if the child union has already another parent
+     */
+    private boolean addChild(Union parent, Union child) {
+        Union existing = parents.get(child);
+        if (existing == null) {
+            parents.put(child, parent);
+            getChildren(parent).add(child);
+        }
+        return existing == null || existing.equals(parent);
+    }
+
+    /**
+     * Collects the unions without parent as roots and counts the size of each subtree.
+     */
+    private AncestorTree complete(List<UnionRow> unionRows, int maxAbove) {
+        for (int r = 0; r < maxAbove; r++) {
+            for (Union union : unionRows.get(r)) {
+                if (!parents.containsKey(union))
+                    roots.add(union);
+            }
+        }
+        // Children are always in upper rows, so each subtree is counted before its parent
+        for (int r = 0; r < maxAbove; r++) {
+            for (Union union : unionRows.get(r)) {
+                int size = 1;
+                for (Union child : childrenOf(union))
+                    size += sizes.get(child);
+                sizes.put(union, size);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Processes all the unions of the tree, each subtree big enough in a separate task of the pool.
+     */
+    void process(ForkJoinPool pool) {
+        pool.invoke(new Task(roots));
+    }
+
+    private void processUnion(Union union) {
+        if (origins) {
+            union.placeOriginsAscending();
+        } else {
+            List<Group> list = groups.get(union);
+            if (list != null) {
+                for (Group group : list)
+                    group.placeAncestors();
+            }
+        }
+    }
+
+    /**
+     * Processes a list of sibling subtrees.
+     */
+    @SuppressWarnings("serial") // Never serialized
+    private class Task extends RecursiveAction {
+        final List<Union> unions;
+
+        Task(List<Union> unions) {
+            this.unions = unions;
+        }
+
+        @Override
+        protected void compute() {
+            List<Task> forks = new ArrayList<>();
+            for (Union union : unions) {
+                if (sizes.get(union) >= FORK_THRESHOLD && unions.size() > 1) {
+                    Task task = new Task(single(union));
+                    task.fork();
+                    forks.add(task);
+                } else {
+                    processSubtree(union);
+                }
+            }
+            for (Task task : forks)
+                task.join();
+        }
+
+        /**
+         * Processes the union and its subtree, with a stack instead of recursion to support many generations.
+         */
+        private void processSubtree(Union root) {
+            List<Union> stack = new ArrayList<>();
+            stack.add(root);
+            while (!stack.isEmpty()) {
+                Union union = stack.remove(stack.size() - 1);
+                processUnion(union);
+                List<Union> next = childrenOf(union);
+                if (sizes.get(union) >= FORK_THRESHOLD && next.size() > 1)
+                    new Task(next).compute();
+                else {
+                    for (int i = next.size() - 1; i >= 0; i--)
+                        stack.add(next.get(i));
+                }
+            }
+        }
+    }
+
+    private static List<Union> single(Union union) {
+        List<Union> list = new ArrayList<>(1);
+        list.add(union);
+        return list;
+    }
+}
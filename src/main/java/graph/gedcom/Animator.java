@@ -1,6 +1,10 @@
 package graph.gedcom;
 
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Person;
+
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static graph.gedcom.Util.*;
 
@@ -9,18 +13,24 @@ import static graph.gedcom.Util.*;
  */
 public class Animator {
 
+    // Max number of squares of the tile grid for a single line. Lines so long are found only in broken layouts,
+    // millions of dips wide: they go whole in the overflow tile.
+    private static final int MAX_LINE_SQUARES = 1 << 16;
+
     float width, height;
     Group fulcrumGroup;
     int maxAbove;
     List<Node> nodes; // All person and family nodes regular and mini
     List<PersonNode> personNodes;
+    Map<Person, List<PersonNode>> personIndex; // Regular (not mini) PersonNodes of each person, to find duplicates
+    Map<Family, List<PersonNode>> spouseIndex; // Regular PersonNodes being spouse in each family, to find duplicates by family and generation
     List<Bond> bonds; // All the horizontal links between two partners
-    List<Line> lines; // All the continuous lines ordered from left to right
-    List<LineRow> lineRows; // All the continuous lines divided in groups in a 2D array
-    List<Set<Line>> lineGroups; // All the continuous lines distributed in groups by proximity
-    List<Line> backLines; // All the back (dashed) lines ordered from left to right
-    List<LineRow> backLineRows; // All the back (dashed) lines divided in groups in a 2D array
-    List<Set<Line>> backLineGroups; // All the back (dashed) lines distributed in groups by proximity
+    List<Line> lines; // All the continuous lines
+    List<LineTile> lineTiles; // Tiles of continuous lines, the first ones used by the actual distribution, the others ready to be reused
+    List<Set<Line>> lineGroups; // All the continuous lines distributed in tiles
+    List<Line> backLines; // All the back (dashed) lines
+    List<LineTile> backLineTiles; // Tiles of back lines
+    List<Set<Line>> backLineGroups; // All the back (dashed) lines distributed in tiles
     List<DuplicateLine> duplicateLines; // All the lines connecting duplicated persons
     List<Group> groups; // Array of groups of PersonNodes and FamilyNodes (not mini)
     List<GroupRow> groupRows;
@@ -28,21 +38,41 @@ public class Animator {
     boolean leftToRight; // False means right to left layout
     float maxBitmapSize;
     float biggestPathSize;
+    LayoutConfig config; // Spaces of the actual diagram
+    ForkJoinPool pool; // To place the ancestor columns in parallel, null for a sequential layout
+    int iterations; // Number of iterations of the last force loop
+    float residual; // Max horizontal shift of a node in the last iteration of the force loop
+    int slideDepth; // Max number of nodes moved by a single overlap correction in the last placement
+    private long clock; // Counter of the row movements inside the force loop
+    private long[] movedAt = new long[0]; // Clock of the last movement of each row
+    private long[] ancestorsDone = new long[0]; // Clock at the start of the last execution of each step on each row
+    private long[] alignDone = new long[0];
+    private long[] descendantsDone = new long[0];
+    // Reused by distributeLines(): each square of the tile grid crossed by each line
+    private int[] squareLines = new int[0]; // Index of the line
+    private int[] squareColumns = new int[0], squareRows = new int[0];
+    private int[] squareOrder = new int[0], squareOrderBuffer = new int[0]; // Indexes of the squares, sorted by tile
+    private int[] overflowLines = new int[0]; // Indexes of the lines crossing more than MAX_LINE_SQUARES squares
+    private final int[] tileCounts = new int[257]; // Counts of each byte value
+    Map<PersonNode, float[]> newSizes; // Width and height of the person nodes to be resized after placeNodes()
 
     Animator() {
         nodes = new ArrayList<>();
         personNodes = new ArrayList<>();
+        personIndex = new HashMap<>();
+        spouseIndex = new HashMap<>();
         bonds = new ArrayList<>();
         lines = new ArrayList<>();
-        lineRows = new ArrayList<>();
+        lineTiles = new ArrayList<>();
         lineGroups = new ArrayList<>();
         backLines = new ArrayList<>();
-        backLineRows = new ArrayList<>();
+        backLineTiles = new ArrayList<>();
         backLineGroups = new ArrayList<>();
         duplicateLines = new ArrayList<>();
         groups = new ArrayList<>();
         groupRows = new ArrayList<>();
         unionRows = new ArrayList<>();
+        newSizes = new LinkedHashMap<>();
     }
 
     void addNode(Node newNode) {
@@ -50,7 +80,23 @@ public class Animator {
         nodes.add(newNode);
 
         // Add partners to personNodes list
-        personNodes.addAll(newNode.getPersonNodes());
+        for (PersonNode personNode : newNode.getPersonNodes()) {
+            personNodes.add(personNode);
+            if (!personNode.mini) {
+                indexNode(personIndex, personNode.person, personNode);
+                if (personNode.familyNode != null)
+                    indexNode(spouseIndex, personNode.familyNode.spouseFamily, personNode);
+            }
+        }
+    }
+
+    private static <K> void indexNode(Map<K, List<PersonNode>> index, K key, PersonNode personNode) {
+        List<PersonNode> list = index.get(key);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            index.put(key, list);
+        }
+        list.add(personNode);
     }
 
     // Preparing the nodes
@@ -61,50 +107,28 @@ public class Animator {
         width = 0;
         height = 0;
         biggestPathSize = 0;
+        newSizes.clear();
 
-        // Array with max height of each row of nodes
-        int totalRows = maxAbove + 1 + maxBelow;
-        float[] rowMaxHeight = new float[totalRows];
-
+        // Calculates sizes of each family node
+        bonds.clear();
         for (Node node : nodes) {
-            // Calculates sizes of each family node
             if (node instanceof FamilyNode) {
                 FamilyNode familyNode = (FamilyNode)node;
-                for (Node partner : familyNode.partners) {
-                    familyNode.width += partner.width;
-                    familyNode.height = Math.max(familyNode.height, partner.height);
-                }
-                if (familyNode.height == 0) // Regular or mini ancestor without partners
-                    familyNode.height = 20;
-                // Bond sizes
-                Bond bond = familyNode.bond;
-                if (bond != null) {
-                    bond.width = familyNode.mini ? MINI_BOND_WIDTH : bond.marriageDate != null ? MARRIAGE_WIDTH : BOND_WIDTH;
-                    bond.height = familyNode.height;
-                    if (bond.marriageDate != null) {
-                        bond.overlap = (MARRIAGE_WIDTH - MARRIAGE_INNER_WIDTH) / 2F;
-                        if (familyNode.side == Side.LEFT || familyNode.side == Side.RIGHT)
-                            familyNode.width += bond.overlap;
-                    }
-                    bonds.add(bond);
-                    familyNode.width += familyNode.getBondWidth();
-                }
+                familyNode.calculateSize();
+                if (familyNode.bond != null)
+                    bonds.add(familyNode.bond);
             }
-            // Discover the maximum height of rows
-            if (!node.mini && !node.getPersonNodes().isEmpty() && node.height > rowMaxHeight[node.generation + maxAbove])
-                rowMaxHeight[node.generation + maxAbove] = node.height;
         }
 
-        // Calculates vertical position of the generation rows
+        // Creates the generation rows
+        int totalRows = maxAbove + 1 + maxBelow;
         unionRows.clear();
         groupRows.clear();
-        float posY = rowMaxHeight[0] / 2;
         for (int gen = -maxAbove; gen < totalRows - maxAbove; gen++) {
-            unionRows.add(new UnionRow(gen, posY));
+            unionRows.add(new UnionRow(gen, 0));
             groupRows.add(new GroupRow(gen));
-            if (gen + maxAbove < totalRows - 1)
-                posY += rowMaxHeight[gen + maxAbove] / 2 + VERTICAL_SPACE_CALC + rowMaxHeight[gen + maxAbove + 1] / 2;
         }
+        placeRowsY();
 
         // Initializes the relation between groups and their origin
         for (Group group : groups) {
@@ -192,13 +216,13 @@ public class Animator {
                                 break find;
                             }
                         }
-                        union = new Union(node.generation);
+                        union = new Union(node.generation, config);
                         union.ancestor = node;
                         break;
                     }
                 }
                 if (union == null) { // Union without ancestor
-                    union = new Union(group.generation);
+                    union = new Union(group.generation, config);
                 }
                 // Add the group to the union
                 if (joinExistingGroup) { // Already populated union
@@ -243,99 +267,299 @@ public class Animator {
         }
     }
 
+    /**
+     * Calculates vertical position of the generation rows.
+     */
+    private void placeRowsY() {
+        // Array with max height of each row of nodes
+        int totalRows = unionRows.size();
+        float[] rowMaxHeight = new float[totalRows];
+        for (Node node : nodes) {
+            if (!node.mini && !node.getPersonNodes().isEmpty() && node.height > rowMaxHeight[node.generation + maxAbove])
+                rowMaxHeight[node.generation + maxAbove] = node.height;
+        }
+        float posY = rowMaxHeight[0] / 2;
+        for (int r = 0; r < totalRows; r++) {
+            unionRows.get(r).yAxe = posY;
+            if (r < totalRows - 1)
+                posY += rowMaxHeight[r] / 2 + config.verticalSpace + rowMaxHeight[r + 1] / 2;
+        }
+    }
+
     // At this point marriage bonds are added in the layout
 
     // Final position of all nodes, resolving all the overlaps
     void placeNodes() {
+        placeNodesY();
+        placeNodesX();
+        placeMiniNodesX();
+        fitMargins();
+        // Reverses nodes for right to left layout
+        if (!leftToRight)
+            mirrorX();
+        updateLines();
+    }
 
-        /* Vertical positioning */
+    /**
+     * @return The final position of nodes, bonds, unions, groups and rows, followed by the diagram size
+     */
+    float[] savePlacement() {
+        float[] placement = new float[placementSize()];
+        int i = 0;
+        for (Metric metric : nodes)
+            i = save(placement, i, metric);
+        for (Metric metric : personNodes)
+            i = save(placement, i, metric);
+        for (Metric metric : bonds)
+            i = save(placement, i, metric);
+        for (Metric metric : groups)
+            i = save(placement, i, metric);
+        for (UnionRow row : unionRows) {
+            placement[i++] = row.yAxe;
+            for (Metric metric : row)
+                i = save(placement, i, metric);
+        }
+        placement[i++] = width;
+        placement[i] = height;
+        return placement;
+    }
 
-        // Vertically place each regular (not mini) node
+    private int placementSize() {
+        int size = (nodes.size() + personNodes.size() + bonds.size() + groups.size()) * 2 + 2;
+        for (UnionRow row : unionRows)
+            size += row.size() * 2 + 1;
+        return size;
+    }
+
+    private static int save(float[] placement, int i, Metric metric) {
+        placement[i] = metric.x;
+        placement[i + 1] = metric.y;
+        return i + 2;
+    }
+
+    /**
+     * Replaces placeNodes() with a placement saved from the same nodes with the same sizes.
+     *
+     * @return False if the placement doesn't fit the actual nodes, that are left untouched
+     */
+    boolean restorePlacement(float[] placement) {
+        if (placement.length != placementSize())
+            return false;
+        int i = 0;
+        for (Metric metric : nodes)
+            i = restore(placement, i, metric);
+        for (Metric metric : personNodes)
+            i = restore(placement, i, metric);
+        for (Metric metric : bonds)
+            i = restore(placement, i, metric);
+        for (Metric metric : groups)
+            i = restore(placement, i, metric);
         for (UnionRow row : unionRows) {
-            for (Union union : row) {
+            row.yAxe = placement[i++];
+            for (Metric metric : row)
+                i = restore(placement, i, metric);
+        }
+        width = placement[i++];
+        height = placement[i];
+        iterations = 0;
+        residual = 0;
+        slideDepth = 0;
+        updateLines();
+        return true;
+    }
+
+    private static int restore(float[] placement, int i, Metric metric) {
+        metric.x = placement[i];
+        metric.y = placement[i + 1];
+        return i + 2;
+    }
+
+    /**
+     * Vertical positioning.
+     */
+    private void placeNodesY() {
+        // Vertically place each regular (not mini) node
+        for (int r = 0; r < unionRows.size(); r++) {
+            UnionRow row = unionRows.get(r);
+            for (int u = 0; u < row.size(); u++) {
+                Union union = row.get(u);
                 union.y = row.yAxe - union.centerRelY();
-                for (Node node : union.list) {
+                for (int i = 0; i < union.list.size(); i++) {
+                    Node node = union.list.get(i);
                     node.setY(row.yAxe - node.centerRelY());
                 }
             }
         }
 
         // Places vertically mini origins and mini youths
-        for (Group group : groups) {
+        for (int g = 0; g < groups.size(); g++) {
+            Group group = groups.get(g);
             if (!group.mini && group.isOriginMiniOrEmpty()) {
                 group.y = unionRows.get(group.generation + maxAbove).yAxe - group.centerRelY();
                 group.placeOriginY();
             }
-            for (Node node : group.list) {
+            for (int i = 0; i < group.list.size(); i++) {
+                Node node = group.list.get(i);
                 node.placeAcquiredOriginY();
                 // Set youth y position
                 Group youth = node.youth;
                 if (youth != null && youth.mini)
-                    youth.setY(node.y + node.height + PROGENY_DISTANCE);
+                    youth.setY(node.y + node.height + config.progenyDistance);
             }
         }
+    }
 
-        /* Horizontal positioning */
-
+    /**
+     * Horizontal positioning of regular nodes.
+     */
+    private void placeNodesX() {
         // Better first arrange the fulcrum group
         fulcrumGroup.placeNodes(0);
         // Ascends generations disposing ancestors and uncles, starting from fulcrum generation up
-        for (int r = maxAbove; r >= 0; r--) {
-            groupRows.get(r).placeAncestors();
+        AncestorTree ancestorTree = pool != null ? AncestorTree.forAncestors(groupRows, unionRows, maxAbove) : null;
+        if (ancestorTree != null) {
+            groupRows.get(maxAbove).placeAncestors();
+            ancestorTree.process(pool);
+        } else {
+            for (int r = maxAbove; r >= 0; r--) {
+                groupRows.get(r).placeAncestors();
+            }
         }
         // Positions the descendants starting from generation -1 (if existing) or from fulcrum generation down
         for (int r = Math.max(0, maxAbove - 1); r < unionRows.size(); r++) {
             unionRows.get(r).placeYouths();
         }
         // Separates couples of overlapping ancestors
-        for (int r = maxAbove - 1; r >= 0; r--) {
-            unionRows.get(r).placeOriginsAscending();
+        AncestorTree originTree = pool != null ? AncestorTree.forOrigins(unionRows, maxAbove) : null;
+        if (originTree != null) {
+            originTree.process(pool);
+        } else {
+            for (int r = maxAbove - 1; r >= 0; r--) {
+                unionRows.get(r).placeOriginsAscending();
+            }
         }
         // Outdistances ancestor unions and descendants nodes optimizing horizontal position
-        int count = 100;
-        float forces = Float.MAX_VALUE;
-        while (count > 0 && Math.abs(forces) > 1) {
-            for (Node node : nodes) {
-                node.force = 0;
+        placeForces();
+        // Just in case removes final overlaps in all rows
+        slideDepth = 0;
+        for (int r = 0; r < unionRows.size(); r++) {
+            slideDepth = Math.max(slideDepth, unionRows.get(r).resolveOverlap());
+        }
+        // Fixes horizontal misalignment between parents (generation -1) and grandparents (generation -2)
+        if (maxAbove > 0) {
+            Union parentUnion = unionRows.get(maxAbove - 1).get(0);
+            parentUnion.moveDescending(parentUnion.alignBetweenOrigins());
+        }
+    }
+
+    /**
+     * Repeats the horizontal steps of the layout until no node moves more than 1 dip, for max 100 iterations.
+     * Each step on a row is executed again only if some node moved in the rows it depends on since its last execution:
+     * a step that finds all its inputs unchanged would not move anything.
+     * The clock arrays are kept for the following layouts, so a steady layout doesn't allocate them again.
+     */
+    private void placeForces() {
+        int rows = unionRows.size();
+        if (movedAt.length < rows) {
+            movedAt = new long[rows];
+            ancestorsDone = new long[rows];
+            alignDone = new long[rows];
+            descendantsDone = new long[rows];
+        }
+        Arrays.fill(movedAt, 0);
+        clock = 0;
+        for (int r = 0; r < rows; r++)
+            unionRows.get(r).moved = false;
+        Arrays.fill(ancestorsDone, -1);
+        Arrays.fill(alignDone, -1);
+        Arrays.fill(descendantsDone, -1);
+        iterations = 0;
+        residual = Float.MAX_VALUE;
+        while (iterations < 100 && residual > 1) {
+            for (int i = 0; i < nodes.size(); i++) {
+                nodes.get(i).force = 0;
             }
+            // Depends on the ancestor rows above and on the youth row below
             for (int r = maxAbove - 1; r >= 0; r--) {
-                unionRows.get(r).outdistanceAncestorColumns();
+                if (hasMoved(ancestorsDone[r], 0, r + 1)) {
+                    ancestorsDone[r] = clock;
+                    unionRows.get(r).outdistanceAncestorColumns();
+                    registerMoves();
+                }
             }
             // Aligns each ancestor union between their origins
             for (int r = maxAbove - 2; r >= 0; r--) {
-                for (Union union : unionRows.get(r)) {
-                    union.setX(union.x + union.alignBetweenOrigins());
+                if (hasMoved(alignDone[r], r - 1, r + 1)) {
+                    alignDone[r] = clock;
+                    UnionRow row = unionRows.get(r);
+                    for (int u = 0; u < row.size(); u++) {
+                        Union union = row.get(u);
+                        union.setX(union.x + union.alignBetweenOrigins());
+                    }
+                    registerMoves();
                 }
             }
-            for (int r = Math.max(0, maxAbove - 1); r < unionRows.size(); r++) {
-                unionRows.get(r).outdistanceDescendantColumns();
+            // Depends on the row itself and on all the descendant rows
+            for (int r = Math.max(0, maxAbove - 1); r < rows; r++) {
+                if (hasMoved(descendantsDone[r], r, rows - 1)) {
+                    descendantsDone[r] = clock;
+                    unionRows.get(r).outdistanceDescendantColumns();
+                    registerMoves();
+                }
             }
-            forces = 0;
-            for (Node node : nodes) {
-                forces += node.force;
+            residual = 0;
+            for (int i = 0; i < nodes.size(); i++) {
+                residual = Math.max(residual, Math.abs(nodes.get(i).force));
             }
-            count--;
+            iterations++;
         }
-        // Just in case removes final overlaps in all rows
-        for (UnionRow unionRow : unionRows) {
-            unionRow.resolveOverlap();
+    }
+
+    /**
+     * Checks if some row in the range has moved after the given clock.
+     */
+    private boolean hasMoved(long since, int fromRow, int toRow) {
+        for (int r = Math.max(fromRow, 0); r <= Math.min(toRow, unionRows.size() - 1); r++) {
+            if (movedAt[r] > since)
+                return true;
         }
-        // Fixes horizontal misalignment between parents (generation -1) and grandparents (generation -2)
-        if (maxAbove > 0) {
-            Union parentUnion = unionRows.get(maxAbove - 1).get(0);
-            parentUnion.moveDescending(parentUnion.alignBetweenOrigins());
+        return false;
+    }
+
+    /**
+     * Updates the clock of the rows with some node moved.
+     */
+    private void registerMoves() {
+        for (int r = 0; r < unionRows.size(); r++) {
+            UnionRow row = unionRows.get(r);
+            if (row.moved) {
+                movedAt[r] = ++clock;
+                row.moved = false;
+            }
         }
-        // Eventually places horizontally mini ancestry and mini progeny
-        for (Node node : nodes) {
+    }
+
+    /**
+     * Eventually places horizontally mini ancestry and mini progeny.
+     */
+    private void placeMiniNodesX() {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
             node.alignMiniEmptyOverYouth();
             node.placeAcquiredOriginX();
             node.placeMiniChildrenX();
         }
+    }
 
+    /**
+     * Finds the diagram margins to fit exactly around every node, and moves all nodes to have the top left corner in 0, 0.
+     */
+    private void fitMargins() {
         // Finds the diagram margins to fit exactly around every node
         float minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
         float maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-        for (Node node : nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
             if (node.x < minX)
                 minX = node.x;
             if (node.x + node.width > maxX)
@@ -349,88 +573,353 @@ public class Animator {
         height = maxY - minY;
 
         // Corrects the position of each node
-        for (Node node : nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
             node.setX(node.x - minX);
             node.setY(node.y - minY);
         }
+    }
 
-        // Reverses nodes for right to left layout
-        if (!leftToRight) {
-            for (Node node : nodes) {
-                if (node instanceof FamilyNode) {
-                    node.x = width - node.x - node.width; // For back lines
-                }
+    /**
+     * Reverses horizontally nodes and bonds, to switch between left to right and right to left layout.
+     */
+    private void mirrorX() {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node instanceof FamilyNode) {
+                node.x = width - node.x - node.width; // For back lines
             }
-            for (PersonNode node : personNodes) {
-                node.x = width - node.x - node.width;
+        }
+        for (int i = 0; i < personNodes.size(); i++) {
+            PersonNode node = personNodes.get(i);
+            node.x = width - node.x - node.width;
+        }
+        for (int i = 0; i < bonds.size(); i++) {
+            Bond bond = bonds.get(i);
+            bond.x = width - bond.x - bond.width;
+        }
+    }
+
+    private void updateLines() {
+        for (int i = 0; i < duplicateLines.size(); i++)
+            duplicateLines.get(i).update();
+        distributeLines(lines, lineTiles, lineGroups);
+        distributeLines(backLines, backLineTiles, backLineGroups);
+    }
+
+    /**
+     * @return How much the previous node in the row overlaps this node, considering the gap between them
+     */
+    private static float getLeftOverlap(Node node) {
+        if (node.union == null || node.prev == null) // Mini node or first of the row
+            return 0;
+        float gap = node.union.equals(node.prev.union) ? node.config.horizontalSpace : node.config.unionDistance;
+        return node.prev.x + node.prev.width + gap - node.x;
+    }
+
+    /**
+     * @return How much the next node in the row overlaps this node, considering the gap between them
+     */
+    private static float getRightOverlap(Node node) {
+        if (node.union == null || node.next == null)
+            return 0;
+        float gap = node.union.equals(node.next.union) ? node.config.horizontalSpace : node.config.unionDistance;
+        return node.x + node.width + gap - node.next.x;
+    }
+
+    /**
+     * Stores the new size of a person node, to be applied by placeResizedNodes().
+     */
+    void resizeNode(PersonNode personNode, float width, float height) {
+        newSizes.put(personNode, new float[]{width, height});
+    }
+
+    /**
+     * Applies the new sizes to the person nodes already placed, keeping still their center.
+     * Only the nodes overlapped by the enlarged ones slide away, followed by their columns in the rows above and below,
+     * while mini nodes, rows vertical position and lines are updated.
+     */
+    void placeResizedNodes() {
+        if (newSizes.isEmpty())
+            return;
+        // Back to left to right coordinates, with the old sizes
+        if (!leftToRight)
+            mirrorX();
+        // Centers, overlaps and distances from the youth before the new sizes, to be kept by the moved nodes
+        Map<Node, Float> oldCenters = new HashMap<>();
+        Map<Node, Float> oldOverlaps = new HashMap<>();
+        Map<Node, Float> youthDistances = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            oldCenters.put(node, node.centerX());
+            oldOverlaps.put(node, Math.max(getRightOverlap(node), 0));
+            if (!node.isAncestor && node.youth != null && !node.youth.mini) {
+                node.youth.updateX();
+                youthDistances.put(node, node.youth.centerX() - node.centerX());
             }
-            for (Bond bond : bonds) {
-                bond.x = width - bond.x - bond.width;
+        }
+        // New sizes, keeping still the center of the node in the row
+        Map<Node, float[]> resized = new LinkedHashMap<>(); // Each node with its previous overlaps on left and right, to be preserved
+        for (Map.Entry<PersonNode, float[]> entry : newSizes.entrySet()) {
+            PersonNode personNode = entry.getKey();
+            float[] size = entry.getValue();
+            if (size[0] == personNode.width && size[1] == personNode.height)
+                continue;
+            Node node = personNode.familyNode != null ? personNode.familyNode : personNode;
+            if (!resized.containsKey(node))
+                resized.put(node, new float[]{getLeftOverlap(node), getRightOverlap(node)});
+            float centerX = node.centerX();
+            personNode.width = size[0];
+            personNode.height = size[1];
+            if (node instanceof FamilyNode)
+                ((FamilyNode)node).calculateSize();
+            node.setX(centerX - node.centerRelX());
+        }
+        newSizes.clear();
+        // Pushes away the nodes of the same row newly overlapped by the resized ones
+        slideDepth = 0;
+        for (Map.Entry<Node, float[]> entry : resized.entrySet()) {
+            Node node = entry.getKey();
+            float rightOver = getRightOverlap(node) - Math.max(entry.getValue()[1], 0);
+            if (rightOver > 0)
+                slideDepth = Math.max(slideDepth, node.next.slide(rightOver));
+            float leftOver = getLeftOverlap(node) - Math.max(entry.getValue()[0], 0);
+            if (leftOver > 0)
+                slideDepth = Math.max(slideDepth, node.prev.slide(-leftOver));
+        }
+        moveColumns(oldCenters, oldOverlaps, youthDistances);
+        // Mini nodes follow the moved regular nodes
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            if (node.centerX() != oldCenters.get(node) || resized.containsKey(node)) {
+                if (node.group != null && node.group.origin != null)
+                    node.group.origin.alignMiniEmptyOverYouth();
+                node.placeAcquiredOriginX();
+                node.placeMiniChildrenX();
             }
         }
+        placeRowsY();
+        placeNodesY();
+        fitMargins();
+        if (!leftToRight)
+            mirrorX();
+        biggestPathSize = 0;
+        updateLines();
+    }
 
-        for (DuplicateLine line : duplicateLines)
-            line.update();
-        distributeLines(lines, lineRows, lineGroups);
-        distributeLines(backLines, backLineRows, backLineGroups);
+    /**
+     * Propagates the shifts of the nodes moved by placeResizedNodes() along their columns, as placeNodes() keeps them:
+     * the regular children follow their parents, the ancestors follow their descendant, and the other parents move back
+     * over their children as far as the nodes beside allow. The nodes overlapped in turn slide away, until nothing moves
+     * any more, for max 100 passes.
+     *
+     * @param oldCenters     Horizontal center of each node before the resize
+     * @param oldOverlaps    Overlap of each node on the next one before the resize, still allowed
+     * @param youthDistances Distance of each parent from the center of its children before the resize
+     */
+    private void moveColumns(Map<Node, Float> oldCenters, Map<Node, Float> oldOverlaps, Map<Node, Float> youthDistances) {
+        Map<Node, Float> down = new HashMap<>(oldCenters); // Center of each node already passed to its children
+        Map<Node, Float> up = new HashMap<>(oldCenters); // Center already passed to its origins
+        boolean moved = true;
+        for (int pass = 0; pass < 100 && moved; pass++) {
+            moved = false;
+            // From the top row down, the children follow their parents
+            for (int r = 0; r < unionRows.size(); r++) {
+                UnionRow row = unionRows.get(r);
+                separateRow(row, oldCenters, oldOverlaps);
+                for (int u = 0; u < row.size(); u++) {
+                    List<Node> list = row.get(u).list;
+                    for (int i = 0; i < list.size(); i++) {
+                        Node node = list.get(i);
+                        float shift = node.centerX() - down.get(node);
+                        if (shift != 0) {
+                            down.put(node, node.centerX());
+                            if (node.youth != null && !node.youth.mini) {
+                                for (Node child : node.youth.list) {
+                                    if (!child.isAncestor) // Ancestors stay over their own descendant
+                                        child.setX(child.x + shift);
+                                }
+                            }
+                            moved = true;
+                        }
+                    }
+                }
+            }
+            // From the bottom row up, the ancestors follow their descendant and the other parents their children
+            for (int r = unionRows.size() - 1; r >= 0; r--) {
+                UnionRow row = unionRows.get(r);
+                for (int u = 0; u < row.size(); u++) {
+                    List<Node> list = row.get(u).list;
+                    for (int i = 0; i < list.size(); i++) {
+                        Node node = list.get(i);
+                        if (node.isAncestor) {
+                            float shift = node.centerX() - up.get(node);
+                            if (shift != 0) {
+                                for (Node origin : node.getOrigins()) {
+                                    origin.setX(origin.x + shift);
+                                    down.put(origin, down.get(origin) + shift); // Their other children stay
+                                }
+                                moved = true;
+                            }
+                        } else if (youthDistances.containsKey(node)) {
+                            node.youth.updateX();
+                            float shift = node.youth.centerX() - node.centerX() - youthDistances.get(node);
+                            // Without overlapping the nodes beside
+                            if (shift > 0 && node.next != null)
+                                shift = Math.min(shift, Math.max(oldOverlaps.get(node) - getRightOverlap(node), 0));
+                            else if (shift < 0 && node.prev != null)
+                                shift = Math.max(shift, -Math.max(oldOverlaps.get(node.prev) - getLeftOverlap(node), 0));
+                            if (Math.abs(shift) > 0.01) {
+                                node.setX(node.x + shift);
+                                down.put(node, down.get(node) + shift); // Not to be passed back to the children
+                                moved = true;
+                            }
+                        }
+                        up.put(node, node.centerX());
+                    }
+                }
+            }
+        }
     }
 
-    private void distributeLines(List<Line> lines, List<LineRow> lineRows, List<Set<Line>> lineGroups) {
+    /**
+     * Resolves the overlaps of the row that were not there before the resize: of two overlapping nodes,
+     * the one that moved less slides away.
+     */
+    private void separateRow(UnionRow row, Map<Node, Float> oldCenters, Map<Node, Float> oldOverlaps) {
+        for (int u = 0; u < row.size(); u++) {
+            List<Node> list = row.get(u).list;
+            for (int i = 0; i < list.size(); i++) {
+                Node node = list.get(i);
+                if (node.next == null)
+                    continue;
+                float overlap = getRightOverlap(node) - oldOverlaps.get(node);
+                if (overlap > 0) {
+                    float shift = node.centerX() - oldCenters.get(node);
+                    float nextShift = node.next.centerX() - oldCenters.get(node.next);
+                    if (shift >= nextShift)
+                        slideDepth = Math.max(slideDepth, node.next.slide(overlap));
+                    else
+                        slideDepth = Math.max(slideDepth, node.slide(-overlap));
+                }
+            }
+        }
+    }
+
+    private void distributeLines(List<Line> lines, List<LineTile> tiles, List<Set<Line>> lineGroups) {
 
         // Max bitmap size is necessary
         if (maxBitmapSize == 0)
             return;
 
-        // Update lines position
-        for (Line line : lines)
+        // Each line enters the squares crossed by its bounding box
+        int size = 0, overflow = 0;
+        int maxColumn = 0, maxRow = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            Line line = lines.get(i);
             line.update();
-
-        // Order lines from left to right
-        Collections.sort(lines, Line::compareTo);
-
-        // Clear lineRows
-        for (LineRow row : lineRows) {
-            row.reset();
-        }
-
-        // Distribute lines inside 'lineRows'
-        for (Line line : lines) {
-            int rowNum = (int)(line.y2 / maxBitmapSize);
-            while (rowNum >= lineRows.size()) {
-                lineRows.add(new LineRow());
+            int left = tileIndex(line.getLeft());
+            int right = tileIndex(line.getRight());
+            int top = tileIndex(line.getTop());
+            int bottom = tileIndex(line.getBottom());
+            if (((long)right - left + 1) * ((long)bottom - top + 1) > MAX_LINE_SQUARES) {
+                if (overflow == overflowLines.length)
+                    overflowLines = Arrays.copyOf(overflowLines, Math.max(8, overflow * 2));
+                overflowLines[overflow++] = i;
+                continue;
             }
-            LineRow row = lineRows.get(rowNum);
-            float lineLeft = Math.min(line.x1, line.x2);
-            if (row.isEmpty() || lineLeft > row.restartX + maxBitmapSize) {
-                row.restartX = lineLeft;
-                row.add(new HashSet<>());
+            for (int row = top; row <= bottom; row++) {
+                for (int column = left; column <= right; column++) {
+                    if (size == squareOrder.length)
+                        growSquares();
+                    squareLines[size] = i;
+                    squareColumns[size] = column;
+                    squareRows[size] = row;
+                    squareOrder[size] = size;
+                    size++;
+                }
             }
-            row.get(row.size() - 1).add(line);
-            // Store the wider path size
-            float pathWidth = Math.max(line.x1, line.x2) - row.restartX;
-            if (pathWidth > biggestPathSize)
-                biggestPathSize = pathWidth;
+            maxColumn = Math.max(maxColumn, right);
+            maxRow = Math.max(maxRow, bottom);
         }
 
-        // Populate linesGroups with existing groups of lines
+        // Orders the squares of the lines row after row, keeping the order of the lines inside each square
+        boolean swapped = radixSort(size, squareColumns, maxColumn, false);
+        swapped = radixSort(size, squareRows, maxRow, swapped);
+        int[] order = swapped ? squareOrderBuffer : squareOrder;
+
+        // Distribute lines inside the tiles, reusing the ones of the previous distribution
         lineGroups.clear();
-        for (LineRow row : lineRows) {
-            for (Set<Line> group : row) {
-                if (!group.isEmpty())
-                    lineGroups.add(group);
+        LineTile tile = null;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int square = order[i];
+            int column = squareColumns[square];
+            int row = squareRows[square];
+            if (tile == null || tile.column != column || tile.row != row) {
+                if (count == tiles.size())
+                    tiles.add(new LineTile());
+                tile = tiles.get(count++);
+                tile.reset(column, row, maxBitmapSize);
+                lineGroups.add(tile);
             }
+            tile.addLine(lines.get(squareLines[square]));
+            // Store the wider path size
+            if (tile.getWidth() > biggestPathSize)
+                biggestPathSize = tile.getWidth();
         }
+        // The overflow tile, with the whole lines, is the last one and is not counted in the biggest path size
+        if (overflow > 0) {
+            if (count == tiles.size())
+                tiles.add(new LineTile());
+            tile = tiles.get(count++);
+            tile.resetOverflow();
+            for (int i = 0; i < overflow; i++)
+                tile.addLine(lines.get(overflowLines[i]));
+            lineGroups.add(tile);
+        }
+        // Releases the lines of the unused tiles
+        for (int i = count; i < tiles.size(); i++)
+            tiles.get(i).reset(0, 0, maxBitmapSize);
+    }
+
+    /**
+     * @return Index of the column or row of the tile grid containing the coordinate, limited so that loops on the indexes
+     * can't overflow
+     */
+    private int tileIndex(float coordinate) {
+        return (int)Math.max(0, Math.min(Integer.MAX_VALUE / 2, Math.floor(coordinate / maxBitmapSize)));
     }
 
-    // One row of the 2D array 'lineRows'
-    static class LineRow extends ArrayList<Set<Line>> {
-        float restartX; // (re)starting point of every group of lines inside this row
+    private void growSquares() {
+        int length = Math.max(64, squareOrder.length * 2);
+        squareLines = Arrays.copyOf(squareLines, length);
+        squareColumns = Arrays.copyOf(squareColumns, length);
+        squareRows = Arrays.copyOf(squareRows, length);
+        squareOrder = Arrays.copyOf(squareOrder, length);
+        squareOrderBuffer = new int[length];
+    }
 
-        void reset() {
-            restartX = 0;
-            for (Set<Line> group : this)
-                group.clear();
+    /**
+     * Stable sort of the indexes by their key, one byte of the key at a time, only the bytes needed by the max key.
+     *
+     * @param swapped The indexes to sort are in squareOrderBuffer instead of squareOrder
+     * @return Whether the sorted indexes are in squareOrderBuffer
+     */
+    private boolean radixSort(int size, int[] keys, int maxKey, boolean swapped) {
+        for (int shift = 0; shift < 32 && maxKey >>> shift != 0; shift += 8) {
+            int[] from = swapped ? squareOrderBuffer : squareOrder;
+            int[] to = swapped ? squareOrder : squareOrderBuffer;
+            Arrays.fill(tileCounts, 0);
+            for (int i = 0; i < size; i++)
+                tileCounts[(keys[from[i]] >>> shift & 0xFF) + 1]++;
+            for (int k = 1; k < tileCounts.length; k++)
+                tileCounts[k] += tileCounts[k - 1];
+            for (int i = 0; i < size; i++)
+                to[tileCounts[keys[from[i]] >>> shift & 0xFF]++] = from[i];
+            swapped = !swapped;
         }
+        return swapped;
     }
 
     @Override
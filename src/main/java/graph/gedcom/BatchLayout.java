@@ -0,0 +1,164 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Person;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Lays out the diagrams of many fulcrums of the same Gedcom, each one in a separate Graph, using the threads of an executor.
+ * All the graphs share the same GedcomIndex, with its attributes and ancestor and descendant counts.
+ * Any executor can be used: e.g. a virtual thread per task executor on modern JVMs, or a fixed thread pool on Android.
+ */
+public class BatchLayout {
+
+    /**
+     * Gives the cards a size, as the graphical implementation would do after startFrom().
+     * Called concurrently by the threads of the executor, so it must be thread-safe.
+     */
+    public interface CardSizer {
+        void measure(PersonNode personNode);
+    }
+
+    /**
+     * The diagram of one fulcrum, or the error that prevented it.
+     */
+    public static class Result {
+        public final Person fulcrum;
+        public final Graph graph; // Null in case of error
+        public final Throwable error;
+        public final long nanos; // Time spent to lay out the diagram
+
+        Result(Person fulcrum, Graph graph, Throwable error, long nanos) {
+            this.fulcrum = fulcrum;
+            this.graph = graph;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
+    private final Graph template;
+    private final CardSizer sizer;
+
+    /**
+     * @param template Graph with the Gedcom and the settings to copy in each diagram
+     * @param sizer    Measures the cards of each diagram
+     */
+    public BatchLayout(Graph template, CardSizer sizer) {
+        this.template = new Graph().copySettings(template);
+        this.sizer = sizer;
+        // Builds the shared structures once, before the threads need them
+        GedcomIndex index = template.getGedcomIndex();
+        index.getAttributes();
+        this.template.setGedcomIndex(index);
+    }
+
+    /**
+     * Submits the layout of the diagram of each fulcrum to the executor.
+     *
+     * @return The batch to take the results from, in order of completion
+     */
+    public Batch submit(List<Person> fulcrums, Executor executor) {
+        Batch batch = new Batch(executor);
+        for (Person fulcrum : fulcrums)
+            batch.add(fulcrum);
+        return batch;
+    }
+
+    /**
+     * Creates and lays out the diagram of a fulcrum in the calling thread.
+     */
+    Result layout(Person fulcrum) {
+        long start = System.nanoTime();
+        try {
+            Graph graph = new Graph().copySettings(template);
+            graph.startFrom(fulcrum);
+            for (PersonNode personNode : graph.getPersonNodes())
+                sizer.measure(personNode);
+            graph.initNodes();
+            graph.placeNodes();
+            return new Result(fulcrum, graph, null, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            return new Result(fulcrum, null, e, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The diagrams submitted together, with their throughput.
+     * Results are meant to be taken by a single thread: take() and the counters are not synchronized.
+     */
+    public class Batch {
+        private final CompletionService<Result> service;
+        private final long start = System.nanoTime();
+        private int submitted;
+        private int completed;
+        private long layoutNanos; // Sum of the layout time of the completed diagrams
+
+        Batch(Executor executor) {
+            service = new ExecutorCompletionService<>(executor);
+        }
+
+        private void add(final Person fulcrum) {
+            service.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return layout(fulcrum);
+                }
+            });
+            submitted++;
+        }
+
+        /**
+         * Waits for the next completed diagram.
+         *
+         * @return The result, or null if all the results have already been taken
+         */
+        public Result take() throws InterruptedException {
+            if (completed == submitted)
+                return null;
+            Future<Result> future = service.take();
+            completed++; // Also if the layout failed: its future is no longer in the service
+            Result result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) { // Errors other than RuntimeException, e.g. StackOverflowError
+                if (e.getCause() instanceof Error)
+                    throw (Error)e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+            layoutNanos += result.nanos;
+            return result;
+        }
+
+        public int getSubmitted() {
+            return submitted;
+        }
+
+        /**
+         * @return Number of results already taken
+         */
+        public int getCompleted() {
+            return completed;
+        }
+
+        /**
+         * @return Diagrams completed per second since the submission
+         */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - start;
+            return elapsed > 0 ? completed * 1e9 / elapsed : 0;
+        }
+
+        /**
+         * @return Average time to lay out one diagram in its thread, in nanoseconds
+         */
+        public long getAverageNanos() {
+            return completed > 0 ? layoutNanos / completed : 0;
+        }
+    }
+}
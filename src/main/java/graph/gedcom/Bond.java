@@ -36,12 +36,16 @@ public class Bond extends Metric {
     // Simple solution to retrieve the marriage year.
     // Family Gem uses another much more complex.
     public String marriageYear() {
+        return yearOf(marriageDate);
+    }
+
+    static String yearOf(String date) {
         String year = "";
-        if (marriageDate != null) {
-            if (marriageDate.lastIndexOf(' ') > 0)
-                year = marriageDate.substring(marriageDate.lastIndexOf(' '));
+        if (date != null) {
+            if (date.lastIndexOf(' ') > 0)
+                year = date.substring(date.lastIndexOf(' '));
             else
-                year = marriageDate;
+                year = date;
         }
         return year;
     }
@@ -0,0 +1,378 @@
+package graph.gedcom;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A placed diagram saved in a compact binary format, to be displayed again without the Gedcom and without a new layout.
+ * Created by Graph.createSnapshot(), reloaded by wrap() or map(). Reading doesn't copy: every getter reads the value
+ * straight from the buffer, that can be a memory-mapped file. Being immutable, a snapshot can be read by many threads.
+ * <p>
+ * Format, little-endian: a header of HEADER_SIZE bytes followed by the sections of node, bond, line, line tile,
+ * back line tile records, tile lines and the strings. Cards, bonds and lines have the flags and kinds of GeometryBuffers.
+ * Lines are continuous lines first, then back lines and duplicate lines. Each line tile refers to a range of tile lines,
+ * the indexes of its lines: a line crossing more tiles is listed in each of them.
+ * Strings (IDs and marriage dates) are referred by their offset in the strings section, or -1 for none,
+ * and stored as an unsigned short length followed by the UTF-8 bytes.
+ */
+public class DiagramSnapshot {
+
+    public static final int MAGIC = 0x47474453; // "GGDS"
+    public static final int VERSION = 2;
+    static final int HEADER_SIZE = 56;
+    static final int NODE_SIZE = 32; // x, y, width, height, flags, amount, person ID, family ID
+    static final int BOND_SIZE = 28; // x, y, width, height, flags, family ID, marriage date
+    static final int LINE_SIZE = 28; // x1, y1, x2, y2, x3, y3, kind
+    static final int TILE_SIZE = 24; // left, top, right, bottom, first tile line, line count
+    private static final int LEFT_TO_RIGHT = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+    private final int nodeCount, bondCount, lineCount, lineTileCount, backLineTileCount;
+    private final int nodesStart, bondsStart, linesStart, lineTilesStart, backLineTilesStart, tileLinesStart, stringsStart;
+
+    private DiagramSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a diagram snapshot");
+        int version = buffer.getInt(4);
+        if (version != VERSION)
+            throw new IllegalArgumentException("Snapshot version " + version + " is not version " + VERSION);
+        nodeCount = getCount(28);
+        bondCount = getCount(32);
+        lineCount = getCount(36);
+        lineTileCount = getCount(40);
+        backLineTileCount = getCount(44);
+        int stringsSize = getCount(48);
+        int tileLineCount = getCount(52);
+        // Section ends in long, so that big counts can't overflow into a size that seems valid
+        long end = HEADER_SIZE + (long)nodeCount * NODE_SIZE + (long)bondCount * BOND_SIZE + (long)lineCount * LINE_SIZE
+                + ((long)lineTileCount + backLineTileCount) * TILE_SIZE + (long)tileLineCount * 4 + stringsSize;
+        if (end > buffer.limit())
+            throw new IllegalArgumentException("Truncated diagram snapshot");
+        nodesStart = HEADER_SIZE;
+        bondsStart = nodesStart + nodeCount * NODE_SIZE;
+        linesStart = bondsStart + bondCount * BOND_SIZE;
+        lineTilesStart = linesStart + lineCount * LINE_SIZE;
+        backLineTilesStart = lineTilesStart + lineTileCount * TILE_SIZE;
+        tileLinesStart = backLineTilesStart + backLineTileCount * TILE_SIZE;
+        stringsStart = tileLinesStart + tileLineCount * 4;
+    }
+
+    private int getCount(int offset) {
+        int count = buffer.getInt(offset);
+        if (count < 0)
+            throw new IllegalArgumentException("Negative count " + count + " in the snapshot header");
+        return count;
+    }
+
+    /**
+     * Reads a snapshot from its position to its limit, without copying it.
+     */
+    public static DiagramSnapshot wrap(ByteBuffer buffer) {
+        return new DiagramSnapshot(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Maps a snapshot file in memory: the content is loaded by the operating system only when read.
+     */
+    public static DiagramSnapshot map(File file) throws IOException {
+        RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomFile.getChannel();
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomFile.close(); // The mapping stays valid
+        }
+    }
+
+    /**
+     * Writes the diagram in a new buffer, ready to be saved from position 0 to the limit.
+     */
+    static ByteBuffer encode(GeometryBuffers geometry, List<Set<Line>> lineGroups, List<Set<Line>> backLineGroups,
+                             float width, float height, float maxBitmapSize, float biggestPathSize, boolean leftToRight) {
+        StringTable strings = new StringTable();
+        Map<Line, Integer> lineIndexes = new IdentityHashMap<>();
+        for (int i = 0; i < geometry.lineCount; i++)
+            lineIndexes.put(geometry.getLine(i), i);
+        int tileLines = countTileLines(lineGroups) + countTileLines(backLineGroups);
+        int size = HEADER_SIZE + geometry.nodeCount * NODE_SIZE + geometry.bondCount * BOND_SIZE + geometry.lineCount * LINE_SIZE
+                + (lineGroups.size() + backLineGroups.size()) * TILE_SIZE + tileLines * 4;
+        // Strings are collected first to know the total size
+        int[] nodeStrings = new int[geometry.nodeCount * 2];
+        for (int i = 0; i < geometry.nodeCount; i++) {
+            PersonNode personNode = geometry.getPersonNode(i);
+            nodeStrings[i * 2] = strings.add(personNode.person.getId());
+            nodeStrings[i * 2 + 1] = personNode.spouseFamily != null ? strings.add(personNode.spouseFamily.getId()) : -1;
+        }
+        int[] bondStrings = new int[geometry.bondCount * 2];
+        for (int i = 0; i < geometry.bondCount; i++) {
+            Bond bond = geometry.getBond(i);
+            bondStrings[i * 2] = bond.familyNode.spouseFamily != null ? strings.add(bond.familyNode.spouseFamily.getId()) : -1;
+            bondStrings[i * 2 + 1] = strings.add(bond.marriageDate);
+        }
+        size += strings.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(leftToRight ? LEFT_TO_RIGHT : 0);
+        buffer.putFloat(width).putFloat(height).putFloat(maxBitmapSize).putFloat(biggestPathSize);
+        buffer.putInt(geometry.nodeCount).putInt(geometry.bondCount).putInt(geometry.lineCount);
+        buffer.putInt(lineGroups.size()).putInt(backLineGroups.size()).putInt(strings.size()).putInt(tileLines);
+        float[] nodes = geometry.nodes;
+        for (int i = 0; i < geometry.nodeCount; i++) {
+            int offset = i * GeometryBuffers.NODE_STRIDE;
+            buffer.putFloat(nodes[offset]).putFloat(nodes[offset + 1]).putFloat(nodes[offset + 2]).putFloat(nodes[offset + 3]);
+            buffer.putInt((int)nodes[offset + GeometryBuffers.NODE_FLAGS]).putInt(geometry.getPersonNode(i).amount);
+            buffer.putInt(nodeStrings[i * 2]).putInt(nodeStrings[i * 2 + 1]);
+        }
+        float[] bonds = geometry.bonds;
+        for (int i = 0; i < geometry.bondCount; i++) {
+            int offset = i * GeometryBuffers.BOND_STRIDE;
+            buffer.putFloat(bonds[offset]).putFloat(bonds[offset + 1]).putFloat(bonds[offset + 2]).putFloat(bonds[offset + 3]);
+            buffer.putInt((int)bonds[offset + GeometryBuffers.BOND_FLAGS]);
+            buffer.putInt(bondStrings[i * 2]).putInt(bondStrings[i * 2 + 1]);
+        }
+        float[] lines = geometry.lines;
+        for (int i = 0; i < geometry.lineCount; i++) {
+            int offset = i * GeometryBuffers.LINE_STRIDE;
+            for (int j = 0; j < GeometryBuffers.LINE_KIND; j++)
+                buffer.putFloat(lines[offset + j]);
+            buffer.putInt((int)lines[offset + GeometryBuffers.LINE_KIND]);
+        }
+        int first = putTiles(buffer, lineGroups, 0);
+        putTiles(buffer, backLineGroups, first); // Lines of the back tiles follow the lines of all the continuous tiles
+        putTileLines(buffer, lineGroups, lineIndexes);
+        putTileLines(buffer, backLineGroups, lineIndexes);
+        buffer.put(strings.bytes.toByteArray());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int countTileLines(List<Set<Line>> groups) {
+        int count = 0;
+        for (Set<Line> group : groups)
+            count += group.size();
+        return count;
+    }
+
+    private static int putTiles(ByteBuffer buffer, List<Set<Line>> groups, int first) {
+        for (Set<Line> group : groups) {
+            LineTile tile = (LineTile)group;
+            buffer.putFloat(tile.left).putFloat(tile.top).putFloat(tile.right).putFloat(tile.bottom);
+            buffer.putInt(first).putInt(tile.size());
+            first += tile.size();
+        }
+        return first;
+    }
+
+    private static void putTileLines(ByteBuffer buffer, List<Set<Line>> groups, Map<Line, Integer> lineIndexes) {
+        for (Set<Line> group : groups) {
+            for (Line line : group)
+                buffer.putInt(lineIndexes.get(line));
+        }
+    }
+
+    /**
+     * Collects the distinct strings with their offset.
+     */
+    private static class StringTable {
+        final Map<String, Integer> offsets = new HashMap<>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        int add(String string) {
+            if (string == null)
+                return -1;
+            Integer offset = offsets.get(string);
+            if (offset == null) {
+                offset = bytes.size();
+                byte[] utf8 = string.getBytes(UTF_8);
+                int length = Math.min(utf8.length, 0xFFFF);
+                bytes.write(length & 0xFF);
+                bytes.write(length >> 8);
+                bytes.write(utf8, 0, length);
+                offsets.put(string, offset);
+            }
+            return offset;
+        }
+
+        int size() {
+            return bytes.size();
+        }
+    }
+
+    private String getString(int reference) {
+        if (reference < 0)
+            return null;
+        int position = stringsStart + reference;
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] utf8 = new byte[length];
+        for (int i = 0; i < length; i++)
+            utf8[i] = buffer.get(position + 2 + i);
+        return new String(utf8, UTF_8);
+    }
+
+    public int getVersion() {
+        return buffer.getInt(4);
+    }
+
+    public boolean isLeftToRight() {
+        return (buffer.getInt(8) & LEFT_TO_RIGHT) != 0;
+    }
+
+    public float getWidth() {
+        return buffer.getFloat(12);
+    }
+
+    public float getHeight() {
+        return buffer.getFloat(16);
+    }
+
+    public float getMaxBitmapSize() {
+        return buffer.getFloat(20);
+    }
+
+    public float getBiggestPathSize() {
+        return buffer.getFloat(24);
+    }
+
+    // Person nodes, in the order of Graph.getPersonNodes()
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public float getNodeX(int index) {
+        return buffer.getFloat(nodesStart + index * NODE_SIZE);
+    }
+
+    public float getNodeY(int index) {
+        return buffer.getFloat(nodesStart + index * NODE_SIZE + 4);
+    }
+
+    public float getNodeWidth(int index) {
+        return buffer.getFloat(nodesStart + index * NODE_SIZE + 8);
+    }
+
+    public float getNodeHeight(int index) {
+        return buffer.getFloat(nodesStart + index * NODE_SIZE + 12);
+    }
+
+    /**
+     * @return Card type, gender and state of the person, to be read with the constants of GeometryBuffers
+     */
+    public int getNodeFlags(int index) {
+        return buffer.getInt(nodesStart + index * NODE_SIZE + 16);
+    }
+
+    /**
+     * @return The number displayed in a mini card
+     */
+    public int getNodeAmount(int index) {
+        return buffer.getInt(nodesStart + index * NODE_SIZE + 20);
+    }
+
+    public String getPersonId(int index) {
+        return getString(buffer.getInt(nodesStart + index * NODE_SIZE + 24));
+    }
+
+    /**
+     * @return ID of the family in which the person is spouse, or null
+     */
+    public String getSpouseFamilyId(int index) {
+        return getString(buffer.getInt(nodesStart + index * NODE_SIZE + 28));
+    }
+
+    // Bonds
+
+    public int getBondCount() {
+        return bondCount;
+    }
+
+    public float getBondX(int index) {
+        return buffer.getFloat(bondsStart + index * BOND_SIZE);
+    }
+
+    public float getBondY(int index) {
+        return buffer.getFloat(bondsStart + index * BOND_SIZE + 4);
+    }
+
+    public float getBondWidth(int index) {
+        return buffer.getFloat(bondsStart + index * BOND_SIZE + 8);
+    }
+
+    public float getBondHeight(int index) {
+        return buffer.getFloat(bondsStart + index * BOND_SIZE + 12);
+    }
+
+    public int getBondFlags(int index) {
+        return buffer.getInt(bondsStart + index * BOND_SIZE + 16);
+    }
+
+    public String getBondFamilyId(int index) {
+        return getString(buffer.getInt(bondsStart + index * BOND_SIZE + 20));
+    }
+
+    public String getMarriageDate(int index) {
+        return getString(buffer.getInt(bondsStart + index * BOND_SIZE + 24));
+    }
+
+    // Lines: continuous, back and duplicate lines
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param point 0 to 5 for x1, y1, x2, y2, x3, y3
+     */
+    public float getLineCoordinate(int index, int point) {
+        return buffer.getFloat(linesStart + index * LINE_SIZE + point * 4);
+    }
+
+    /**
+     * @return One of the line kinds of GeometryBuffers
+     */
+    public int getLineKind(int index) {
+        return buffer.getInt(linesStart + index * LINE_SIZE + 24);
+    }
+
+    // Tiles of continuous lines and tiles of back lines, as returned by Graph.getLines() and Graph.getBackLines()
+
+    public int getLineTileCount(boolean back) {
+        return back ? backLineTileCount : lineTileCount;
+    }
+
+    /**
+     * @param side 0 to 3 for left, top, right, bottom
+     */
+    public float getLineTileBound(boolean back, int tile, int side) {
+        return buffer.getFloat(tileStart(back, tile) + side * 4);
+    }
+
+    public int getLineTileSize(boolean back, int tile) {
+        return buffer.getInt(tileStart(back, tile) + 20);
+    }
+
+    /**
+     * @param position From 0 to the size of the tile excluded
+     * @return Index of the line, to be read with the line getters
+     */
+    public int getLineTileLine(boolean back, int tile, int position) {
+        return buffer.getInt(tileLinesStart + (buffer.getInt(tileStart(back, tile) + 16) + position) * 4);
+    }
+
+    private int tileStart(boolean back, int tile) {
+        return (back ? backLineTilesStart : lineTilesStart) + tile * TILE_SIZE;
+    }
+}
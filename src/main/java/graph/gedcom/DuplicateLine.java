@@ -12,10 +12,40 @@ public class DuplicateLine extends Line {
     public Gender gender;
     public float x3, y3;
 
-    public DuplicateLine(PersonNode firstNode, PersonNode secondNode) {
+    public DuplicateLine(PersonNode firstNode, PersonNode secondNode, Gender gender) {
         this.firstNode = firstNode;
         this.secondNode = secondNode;
-        gender = Gender.getGender(firstNode.person);
+        this.gender = gender;
+    }
+
+    /**
+     * @deprecated Reads the gender from the person records: use the constructor with the gender given by the diagram.
+     */
+    @Deprecated
+    public DuplicateLine(PersonNode firstNode, PersonNode secondNode) {
+        this(firstNode, secondNode, Gender.getGender(firstNode.person));
+    }
+
+    // The bounding box includes the third point, where the curve passes
+
+    @Override
+    public float getLeft() {
+        return Math.min(super.getLeft(), x3);
+    }
+
+    @Override
+    public float getTop() {
+        return Math.min(super.getTop(), y3);
+    }
+
+    @Override
+    public float getRight() {
+        return Math.max(super.getRight(), x3);
+    }
+
+    @Override
+    public float getBottom() {
+        return Math.max(super.getBottom(), y3);
     }
 
     @Override
@@ -33,7 +63,7 @@ public class DuplicateLine extends Line {
             y1 = firstNode.y + firstNode.height - shift;
             y2 = secondNode.y + secondNode.height - shift;
             x3 = x1 + (x2 - x1) / 2;
-            y3 = Math.max(y1, y2) + Math.min(Util.VERTICAL_SPACE_CALC, Math.abs(x2 - x1));
+            y3 = Math.max(y1, y2) + Math.min(firstNode.config.verticalSpace, Math.abs(x2 - x1));
         } else { // Straight line between nodes at different generations
             if (firstNode.x < secondNode.x) {
                 if (secondNode.x > firstNode.x + firstNode.width) { // Line between corners
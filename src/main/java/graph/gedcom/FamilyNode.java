@@ -1,6 +1,5 @@
 package graph.gedcom;
 
-import org.folg.gedcom.model.EventFact;
 import org.folg.gedcom.model.Family;
 
 import java.util.ArrayList;
@@ -19,8 +18,9 @@ public class FamilyNode extends Node {
     Side side; // Following or previous marriage: LEFT is a husband, RIGHT is a wife
     boolean leftToRight; // Not used here but passed to lines
 
-    public FamilyNode(Family spouseFamily, boolean mini, Side side, boolean leftToRight) {
+    public FamilyNode(Family spouseFamily, boolean mini, Side side, boolean leftToRight, LayoutConfig config) {
         super();
+        this.config = config;
         this.spouseFamily = spouseFamily;
         this.mini = mini;
         this.side = side;
@@ -28,6 +28,14 @@ public class FamilyNode extends Node {
         partners = new ArrayList<>();
     }
 
+    /**
+     * @deprecated Uses the default LayoutConfig: use the constructor with the configuration of the diagram.
+     */
+    @Deprecated
+    public FamilyNode(Family spouseFamily, boolean mini, Side side, boolean leftToRight) {
+        this(spouseFamily, mini, side, leftToRight, new LayoutConfig.Builder().build());
+    }
+
     @Override
     Node getOrigin() {
         PersonNode mainPerson = getMainPersonNode();
@@ -37,13 +45,12 @@ public class FamilyNode extends Node {
     }
 
     @Override
-    List<Node> getOrigins() {
-        List<Node> origins = new ArrayList<>();
-        for (PersonNode partner : partners) {
-            if (partner.origin != null && !partner.origin.mini && !partner.origin.getPersonNodes().isEmpty())
-                origins.add(partner.origin);
+    void findOrigins(List<Node> origins) {
+        for (int i = 0; i < partners.size(); i++) {
+            Node origin = partners.get(i).origin;
+            if (origin != null && !origin.mini && !origin.getPersonNodes().isEmpty())
+                origins.add(origin);
         }
-        return origins;
     }
 
     @Override
@@ -67,7 +74,8 @@ public class FamilyNode extends Node {
 
     @Override
     PersonNode getMainPersonNode() {
-        for (PersonNode partner : partners) {
+        for (int i = 0; i < partners.size(); i++) {
+            PersonNode partner = partners.get(i);
             if (!partner.acquired)
                 return partner;
         }
@@ -106,17 +114,38 @@ public class FamilyNode extends Node {
 
     /**
      * Creates bond if there are no partners or many partners.
+     *
+     * @param marriageDate GEDCOM date of the marriage, or null
      */
-    void createBond() {
+    void createBond(String marriageDate) {
         if (partners.size() == 1 && match == Match.MAIN)
             return;
         bond = new Bond(this);
-        if (!mini && !partners.isEmpty()) {
-            // GEDCOM date of the marriage
-            for (EventFact ef : spouseFamily.getEventsFacts()) {
-                if (ef.getTag().equals("MARR"))
-                    bond.marriageDate = ef.getDate();
+        if (!mini && !partners.isEmpty())
+            bond.marriageDate = marriageDate;
+    }
+
+    /**
+     * Calculates width and height from the partners, together with the size of the bond.
+     */
+    void calculateSize() {
+        width = 0;
+        height = 0;
+        for (Node partner : partners) {
+            width += partner.width;
+            height = Math.max(height, partner.height);
+        }
+        if (height == 0) // Regular or mini ancestor without partners
+            height = 20;
+        if (bond != null) {
+            bond.width = mini ? config.miniBondWidth : bond.marriageDate != null ? config.marriageWidth : config.bondWidth;
+            bond.height = height;
+            if (bond.marriageDate != null) {
+                bond.overlap = (config.marriageWidth - config.marriageInnerWidth) / 2F;
+                if (side == Side.LEFT || side == Side.RIGHT)
+                    width += bond.overlap;
             }
+            width += getBondWidth();
         }
     }
 
@@ -154,7 +183,7 @@ public class FamilyNode extends Node {
     // Places partners and bond
     @Override
     void setX(float x) {
-        force += x - this.x;
+        addForce(x - this.x);
         this.x = x;
         if (partners.isEmpty()) { // Mini ancestry without partners
             bond.setX(x);
@@ -179,7 +208,8 @@ public class FamilyNode extends Node {
     @Override
     void setY(float y) {
         this.y = y;
-        for (PersonNode partner : partners) {
+        for (int i = 0; i < partners.size(); i++) {
+            PersonNode partner = partners.get(i);
             partner.setY(centerY() - partner.centerRelY());
         }
         if (bond != null)
@@ -199,7 +229,7 @@ public class FamilyNode extends Node {
     // Bond width excluding overlapping
     float getBondWidth() {
         if (bond != null)
-            return mini ? MINI_BOND_WIDTH : bond.marriageDate != null ? MARRIAGE_INNER_WIDTH : BOND_WIDTH;
+            return mini ? config.miniBondWidth : bond.marriageDate != null ? config.marriageInnerWidth : config.bondWidth;
         return 0;
     }
 
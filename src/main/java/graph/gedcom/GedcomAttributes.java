@@ -0,0 +1,90 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Gender;
+import org.folg.gedcom.model.EventFact;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Person;
+
+/**
+ * Table of the attributes of persons and families used by the graph, to scan the facts of each record once.
+ * Gender, death and marriage date are read in bulk together with the index, display names at first request.
+ * Arrays are indexed by the IDs of GedcomIndex.
+ */
+public class GedcomAttributes {
+
+    private static final Gender[] GENDERS = Gender.values();
+
+    private final GedcomIndex index;
+    private final byte[] genders; // Ordinal of the Gender of each person
+    private final boolean[] dead;
+    private final String[] marriageDates; // GEDCOM date of the last MARR fact of each family
+    private final String[] names; // Filled lazily: two threads can only compute the same name twice
+
+    GedcomAttributes(GedcomIndex index) {
+        this.index = index;
+        int persons = index.getPersonCount();
+        genders = new byte[persons];
+        dead = new boolean[persons];
+        names = new String[persons];
+        for (int i = 0; i < persons; i++) {
+            Person person = index.getPerson(i);
+            genders[i] = (byte)Gender.getGender(person).ordinal();
+            for (EventFact fact : person.getEventsFacts()) {
+                if ("DEAT".equals(fact.getTag()) || "BURI".equals(fact.getTag())) {
+                    dead[i] = true;
+                    break;
+                }
+            }
+        }
+        marriageDates = new String[index.getFamilyCount()];
+        for (int i = 0; i < marriageDates.length; i++) {
+            Family family = index.getFamily(i);
+            for (EventFact fact : family.getEventsFacts()) {
+                if ("MARR".equals(fact.getTag()))
+                    marriageDates[i] = fact.getDate();
+            }
+        }
+    }
+
+    /**
+     * @return The gender of the person, NONE for a person outside the index
+     */
+    public Gender getGender(int person) {
+        return person < 0 ? Gender.NONE : GENDERS[genders[person]];
+    }
+
+    /**
+     * Checks if the person is dead or buried.
+     */
+    public boolean isDead(int person) {
+        return person >= 0 && dead[person];
+    }
+
+    /**
+     * @return GEDCOM date of the marriage, or null
+     */
+    public String getMarriageDate(int family) {
+        return family < 0 ? null : marriageDates[family];
+    }
+
+    /**
+     * @return Year of the marriage, or an empty string
+     */
+    public String getMarriageYear(int family) {
+        return Bond.yearOf(getMarriageDate(family));
+    }
+
+    /**
+     * @return Name of the person as produced by Util.essence()
+     */
+    public String getName(int person) {
+        if (person < 0)
+            return Util.essence(null);
+        String name = names[person];
+        if (name == null) {
+            name = Util.essence(index.getPerson(person));
+            names[person] = name;
+        }
+        return name;
+    }
+}
@@ -0,0 +1,408 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.parser.ModelParser;
+import org.xml.sax.SAXParseException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Genealogy source reading a GEDCOM file without parsing it all: the file is memory-mapped and scanned once
+ * to find where each person (INDI) and family (FAM) record starts and ends, then only the records requested
+ * are parsed by ModelParser, one batch at a time, and kept for the following requests.
+ * The header of the file is parsed together with each batch, so the character set declared there is respected.
+ * The scan also notes where the references between persons and families are, so that ancestors and descendants
+ * can be counted on the whole file without parsing it.
+ * Files must be smaller than 2 GB and use a single-byte based encoding (ANSEL, ASCII, ANSI, UTF-8), not UTF-16.
+ * Methods are synchronized, so the source can serve graphs of many threads.
+ */
+public class GedcomFileSource implements GenealogySource {
+
+    private static final byte[] TRAILER = "0 TRLR\n".getBytes();
+
+    private final ByteBuffer buffer;
+    private final int headerEnd; // The header goes from the start of the file to here, 0 without header
+    private final Map<String, Integer> personRecords; // Position of each person in the following arrays
+    private final Map<String, Integer> familyRecords;
+    private int[] start = new int[1024]; // Offset of the first byte of each record
+    private int[] end = new int[1024]; // Offset after the last byte
+    private int records;
+    // References found by the scan, from persons to their parent and spouse families, from families to their spouses and children
+    private final Links personUp = new Links(), personDown = new Links(), familyUp = new Links(), familyDown = new Links();
+    private int[] upStart, upData; // Resolved references of each record towards the ancestors, built at first count
+    private int[] downStart, downData; // Towards the descendants
+    private int[] ancestorCounts, descendantCounts; // Of each record, -1 if not yet counted
+    private int[] marks, queue; // For the visits of the counts
+    private int stamp;
+    private final Map<String, Person> persons = new HashMap<>(); // Already parsed
+    private final Map<String, Family> families = new HashMap<>();
+    private int parsedBatches;
+
+    /**
+     * Maps the file and indexes its records, without parsing them.
+     */
+    public GedcomFileSource(File file) throws IOException {
+        RandomAccessFile randomFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomFile.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            randomFile.close(); // The mapping stays valid
+        }
+        personRecords = new HashMap<>();
+        familyRecords = new HashMap<>();
+        headerEnd = indexRecords();
+    }
+
+    /**
+     * Finds the level 0 lines, each one the beginning of a record, and stores the range of persons and families.
+     *
+     * @return The end of the header, or 0 if the file doesn't start with a header
+     */
+    private int indexRecords() {
+        int limit = buffer.limit();
+        int header = 0;
+        int recordStart = -1;
+        String recordId = null;
+        String recordTag = null;
+        int position = 0;
+        // Skips the UTF-8 byte order mark
+        if (limit >= 3 && buffer.get(0) == (byte)0xEF && buffer.get(1) == (byte)0xBB && buffer.get(2) == (byte)0xBF)
+            position = 3;
+        while (position <= limit) {
+            int lineStart = position;
+            int lineEnd = position;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r')
+                lineEnd++;
+            int i = lineStart;
+            while (i < lineEnd && (buffer.get(i) == ' ' || buffer.get(i) == '\t'))
+                i++;
+            boolean levelZero = i + 1 < lineEnd && buffer.get(i) == '0' && buffer.get(i + 1) == ' ';
+            // A new record or the end of file closes the previous record
+            if ((levelZero || position == limit) && recordStart >= 0) {
+                if ("HEAD".equals(recordTag) && header == 0)
+                    header = lineStart;
+                else if ("INDI".equals(recordTag) && recordId != null)
+                    addRecord(personRecords, recordId, recordStart, lineStart);
+                else if ("FAM".equals(recordTag) && recordId != null)
+                    addRecord(familyRecords, recordId, recordStart, lineStart);
+                recordStart = -1;
+            }
+            if (position == limit)
+                break;
+            if (levelZero) {
+                // Line like "0 @I1@ INDI" or "0 HEAD"
+                recordStart = lineStart;
+                recordId = null;
+                i = skipSpaces(i + 2, lineEnd);
+                if (i < lineEnd && buffer.get(i) == '@') {
+                    int idEnd = i + 1;
+                    while (idEnd < lineEnd && buffer.get(idEnd) != '@')
+                        idEnd++;
+                    recordId = ascii(i + 1, idEnd);
+                    i = skipSpaces(idEnd + 1, lineEnd);
+                }
+                int tagEnd = i;
+                while (tagEnd < lineEnd && buffer.get(tagEnd) != ' ')
+                    tagEnd++;
+                recordTag = ascii(i, tagEnd);
+            } else if (recordId != null && i + 1 < lineEnd && buffer.get(i) == '1' && buffer.get(i + 1) == ' ') {
+                // Line like "1 FAMC @F1@" inside a person or "1 CHIL @I1@" inside a family
+                int tagStart = skipSpaces(i + 2, lineEnd);
+                int tagEnd = tagStart;
+                while (tagEnd < lineEnd && buffer.get(tagEnd) != ' ')
+                    tagEnd++;
+                int pointer = skipSpaces(tagEnd, lineEnd);
+                if (pointer < lineEnd && buffer.get(pointer) == '@') {
+                    if ("INDI".equals(recordTag)) {
+                        if (isTag(tagStart, tagEnd, "FAMC"))
+                            personUp.add(records, pointer);
+                        else if (isTag(tagStart, tagEnd, "FAMS"))
+                            personDown.add(records, pointer);
+                    } else if ("FAM".equals(recordTag)) {
+                        if (isTag(tagStart, tagEnd, "HUSB") || isTag(tagStart, tagEnd, "WIFE"))
+                            familyUp.add(records, pointer);
+                        else if (isTag(tagStart, tagEnd, "CHIL"))
+                            familyDown.add(records, pointer);
+                    }
+                }
+            }
+            position = lineEnd;
+            while (position < limit && (buffer.get(position) == '\n' || buffer.get(position) == '\r'))
+                position++;
+        }
+        return header;
+    }
+
+    private int skipSpaces(int position, int lineEnd) {
+        while (position < lineEnd && buffer.get(position) == ' ')
+            position++;
+        return position;
+    }
+
+    private boolean isTag(int from, int to, String tag) {
+        if (to - from != tag.length())
+            return false;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) != tag.charAt(i - from))
+                return false;
+        }
+        return true;
+    }
+
+    private void addRecord(Map<String, Integer> recordMap, String id, int recordStart, int recordEnd) {
+        if (records == start.length) {
+            start = Arrays.copyOf(start, records * 2);
+            end = Arrays.copyOf(end, records * 2);
+        }
+        start[records] = recordStart;
+        end[records] = recordEnd;
+        recordMap.put(id, records++);
+    }
+
+    private String ascii(int from, int to) {
+        char[] chars = new char[to - from];
+        for (int i = from; i < to; i++)
+            chars[i - from] = (char)(buffer.get(i) & 0xFF);
+        return new String(chars);
+    }
+
+    /**
+     * @return Number of persons in the file
+     */
+    public synchronized int getPersonCount() {
+        return personRecords.size();
+    }
+
+    public synchronized int getFamilyCount() {
+        return familyRecords.size();
+    }
+
+    /**
+     * @return Number of persons already parsed
+     */
+    public synchronized int getParsedPersonCount() {
+        return persons.size();
+    }
+
+    /**
+     * @return Number of times the parser has been run
+     */
+    public synchronized int getParsedBatches() {
+        return parsedBatches;
+    }
+
+    @Override
+    public synchronized List<Person> fetchPersons(Collection<String> ids) {
+        parse(ids, personRecords, persons);
+        List<Person> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Person person = persons.get(id);
+            if (person != null)
+                result.add(person);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<Family> fetchFamilies(Collection<String> ids) {
+        parse(ids, familyRecords, families);
+        List<Family> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Family family = families.get(id);
+            if (family != null)
+                result.add(family);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int[] countAncestors(List<String> ids) {
+        return count(ids, true);
+    }
+
+    @Override
+    public synchronized int[] countDescendants(List<String> ids) {
+        return count(ids, false);
+    }
+
+    private int[] count(List<String> ids, boolean up) {
+        if (upStart == null)
+            resolveLinks();
+        int[] counts = new int[ids.size()];
+        int[] known = up ? ancestorCounts : descendantCounts;
+        for (int i = 0; i < counts.length; i++) {
+            Integer record = personRecords.get(ids.get(i));
+            if (record == null)
+                continue;
+            if (known[record] < 0)
+                known[record] = up ? visit(record, upStart, upData) : visit(record, downStart, downData);
+            counts[i] = known[record];
+        }
+        return counts;
+    }
+
+    /**
+     * Turns the references found by the scan into record numbers, dropping the ones to records missing in the file.
+     */
+    private void resolveLinks() {
+        int[][] up = resolve(personUp, familyRecords, familyUp, personRecords);
+        upStart = up[0];
+        upData = up[1];
+        int[][] down = resolve(personDown, familyRecords, familyDown, personRecords);
+        downStart = down[0];
+        downData = down[1];
+        ancestorCounts = new int[records];
+        Arrays.fill(ancestorCounts, -1);
+        descendantCounts = new int[records];
+        Arrays.fill(descendantCounts, -1);
+        marks = new int[records];
+        queue = new int[16];
+    }
+
+    /**
+     * @return Start and data of the referenced records, as compressed sparse rows like in GedcomIndex
+     */
+    private int[][] resolve(Links fromPersons, Map<String, Integer> families, Links fromFamilies, Map<String, Integer> persons) {
+        int[] targets = new int[fromPersons.size + fromFamilies.size];
+        int[] start = new int[records + 1];
+        for (int i = 0; i < targets.length; i++) {
+            boolean person = i < fromPersons.size;
+            Links links = person ? fromPersons : fromFamilies;
+            int link = person ? i : i - fromPersons.size;
+            int idStart = links.offset[link] + 1;
+            int idEnd = idStart;
+            while (idEnd < buffer.limit() && buffer.get(idEnd) != '@' && buffer.get(idEnd) != '\n' && buffer.get(idEnd) != '\r')
+                idEnd++;
+            Integer target = (person ? families : persons).get(ascii(idStart, idEnd));
+            targets[i] = target != null ? target : -1;
+            if (target != null)
+                start[links.record[link] + 1]++;
+        }
+        for (int r = 0; r < records; r++)
+            start[r + 1] += start[r];
+        int[] data = new int[start[records]];
+        int[] fill = Arrays.copyOf(start, records);
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] < 0)
+                continue;
+            int record = i < fromPersons.size ? fromPersons.record[i] : fromFamilies.record[i - fromPersons.size];
+            data[fill[record]++] = targets[i];
+        }
+        return new int[][]{start, data};
+    }
+
+    /**
+     * Breadth-first visit from a person through the families to the persons of the next generation, as GedcomStatistics does.
+     *
+     * @return Number of distinct persons reached, the start one excluded
+     */
+    private int visit(int person, int[] start, int[] data) {
+        if (++stamp == 0) { // Overflow: clears the old marks
+            Arrays.fill(marks, 0);
+            stamp = 1;
+        }
+        int head = 0, tail = 0;
+        marks[person] = stamp;
+        queue[tail++] = person;
+        while (head < tail) {
+            int record = queue[head++];
+            for (int f = start[record]; f < start[record + 1]; f++) {
+                int family = data[f];
+                for (int p = start[family]; p < start[family + 1]; p++) {
+                    int relative = data[p];
+                    if (marks[relative] == stamp)
+                        continue;
+                    marks[relative] = stamp;
+                    if (tail == queue.length)
+                        queue = Arrays.copyOf(queue, tail * 2);
+                    queue[tail++] = relative;
+                }
+            }
+        }
+        return tail - 1;
+    }
+
+    /**
+     * Parses together the records not parsed yet, preceded by the header and followed by the trailer.
+     */
+    private void parse(Collection<String> ids, Map<String, Integer> recordMap, Map<String, ?> parsed) {
+        ByteArrayOutputStream stream = null;
+        for (String id : ids) {
+            Integer record = recordMap.get(id);
+            if (record == null || parsed.containsKey(id))
+                continue;
+            if (stream == null) {
+                stream = new ByteArrayOutputStream();
+                write(stream, 0, headerEnd);
+            }
+            write(stream, start[record], end[record]);
+        }
+        if (stream == null)
+            return;
+        stream.write(TRAILER, 0, TRAILER.length);
+        Gedcom gedcom;
+        try {
+            gedcom = new ModelParser().parseGedcom(new ByteArrayInputStream(stream.toByteArray()));
+        } catch (SAXParseException e) {
+            throw new IllegalStateException("Wrong GEDCOM record: " + e.getMessage(), e);
+        } catch (IOException e) { // Can't happen reading from memory
+            throw new IllegalStateException(e);
+        }
+        parsedBatches++;
+        for (Person person : gedcom.getPeople())
+            persons.put(person.getId(), person);
+        for (Family family : gedcom.getFamilies())
+            families.put(family.getId(), family);
+    }
+
+    private void write(ByteArrayOutputStream stream, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.get(bytes);
+        stream.write(bytes, 0, bytes.length);
+        if (to > from && bytes[bytes.length - 1] != '\n' && bytes[bytes.length - 1] != '\r') // Last line of the file
+            stream.write('\n');
+    }
+
+    /**
+     * Releases the parsed records, that will be parsed again when requested.
+     */
+    public synchronized void clear() {
+        persons.clear();
+        families.clear();
+    }
+
+    /**
+     * References of one kind found by the scan: the record containing them and the position of the referenced ID.
+     */
+    private static class Links {
+        int[] record = new int[256];
+        int[] offset = new int[256];
+        int size;
+
+        void add(int from, int position) {
+            if (size == record.length) {
+                record = Arrays.copyOf(record, size * 2);
+                offset = Arrays.copyOf(offset, size * 2);
+            }
+            record[size] = from;
+            offset[size++] = position;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.ChildRef;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.ParentFamilyRef;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.model.SpouseFamilyRef;
+import org.folg.gedcom.model.SpouseRef;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the relationships of a Gedcom, built once to avoid resolving the references at every step of the graph.
+ * Persons and families are mapped to dense integer IDs, and the relatives of each one are stored in compressed sparse row arrays:
+ * the relatives of the record with ID 'i' are 'data[start[i]]' to 'data[start[i + 1] - 1]'.
+ * Being immutable can be shared by many graphs working in different threads, as long as the Gedcom is not modified.
+ */
+public class GedcomIndex {
+
+    private final Gedcom gedcom;
+    private final Person[] persons;
+    private final Family[] families;
+    private final Map<Person, Integer> personIds;
+    private final Map<Family, Integer> familyIds;
+    // Person relations, in the same order of Person.getParentFamilies() and Person.getSpouseFamilies()
+    private final int[] parentFamilyStart, parentFamilyData;
+    private final int[] spouseFamilyStart, spouseFamilyData;
+    // Family relations. Husbands and wives keep the order of the references, with -1 for references not found.
+    private final int[] husbandStart, husbandData;
+    private final int[] wifeStart, wifeData;
+    private final int[] childStart, childData;
+    private volatile GedcomStatistics statistics;
+    private volatile GedcomAttributes attributes;
+
+    public GedcomIndex(Gedcom gedcom) {
+        this.gedcom = gedcom;
+        List<Person> people = gedcom.getPeople();
+        persons = people.toArray(new Person[0]);
+        personIds = new HashMap<>(persons.length * 2);
+        for (int i = 0; i < persons.length; i++)
+            personIds.put(persons[i], i);
+        families = gedcom.getFamilies().toArray(new Family[0]);
+        familyIds = new HashMap<>(families.length * 2);
+        for (int i = 0; i < families.length; i++)
+            familyIds.put(families[i], i);
+
+        Rows parents = new Rows(persons.length);
+        Rows spouses = new Rows(persons.length);
+        for (Person person : persons) {
+            for (ParentFamilyRef ref : person.getParentFamilyRefs())
+                parents.addIfFound(getId(ref.getFamily(gedcom)));
+            parents.endRow();
+            for (SpouseFamilyRef ref : person.getSpouseFamilyRefs())
+                spouses.addIfFound(getId(ref.getFamily(gedcom)));
+            spouses.endRow();
+        }
+        parentFamilyStart = parents.start;
+        parentFamilyData = parents.trimmedData();
+        spouseFamilyStart = spouses.start;
+        spouseFamilyData = spouses.trimmedData();
+
+        Rows husbands = new Rows(families.length);
+        Rows wives = new Rows(families.length);
+        Rows children = new Rows(families.length);
+        for (Family family : families) {
+            for (SpouseRef ref : family.getHusbandRefs())
+                husbands.add(getId(ref.getPerson(gedcom)));
+            husbands.endRow();
+            for (SpouseRef ref : family.getWifeRefs())
+                wives.add(getId(ref.getPerson(gedcom)));
+            wives.endRow();
+            for (ChildRef ref : family.getChildRefs())
+                children.addIfFound(getId(ref.getPerson(gedcom)));
+            children.endRow();
+        }
+        husbandStart = husbands.start;
+        husbandData = husbands.trimmedData();
+        wifeStart = wives.start;
+        wifeData = wives.trimmedData();
+        childStart = children.start;
+        childData = children.trimmedData();
+    }
+
+    public Gedcom getGedcom() {
+        return gedcom;
+    }
+
+    /**
+     * @return Ancestor and descendant counts of the persons of this index, created at first request
+     */
+    public GedcomStatistics getStatistics() {
+        if (statistics == null) {
+            synchronized (this) {
+                if (statistics == null)
+                    statistics = new GedcomStatistics(this);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @return Gender, death, marriage date and name of the persons and families of this index, created at first request
+     */
+    public GedcomAttributes getAttributes() {
+        if (attributes == null) {
+            synchronized (this) {
+                if (attributes == null)
+                    attributes = new GedcomAttributes(this);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * @return True if persons or families have been added to or removed from the Gedcom after the index was built.
+     * Changes of the references between records already indexed are not detected.
+     */
+    public boolean isStale() {
+        return gedcom.getPeople().size() != persons.length || gedcom.getFamilies().size() != families.length;
+    }
+
+    public int getPersonCount() {
+        return persons.length;
+    }
+
+    public int getFamilyCount() {
+        return families.length;
+    }
+
+    public Person getPerson(int id) {
+        return persons[id];
+    }
+
+    public Family getFamily(int id) {
+        return families[id];
+    }
+
+    /**
+     * @return ID of the person, or -1 if the person doesn't belong to the Gedcom
+     */
+    public int getId(Person person) {
+        Integer id = person != null ? personIds.get(person) : null;
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return ID of the family, or -1 if the family doesn't belong to the Gedcom
+     */
+    public int getId(Family family) {
+        Integer id = family != null ? familyIds.get(family) : null;
+        return id != null ? id : -1;
+    }
+
+    // Person relations. A person ID of -1 has no relatives.
+
+    public int getParentFamilyCount(int person) {
+        return person < 0 ? 0 : parentFamilyStart[person + 1] - parentFamilyStart[person];
+    }
+
+    public int getParentFamily(int person, int index) {
+        return parentFamilyData[parentFamilyStart[person] + index];
+    }
+
+    /**
+     * @return ID of the last family in which the person is child, or -1
+     */
+    public int getLastParentFamily(int person) {
+        int count = getParentFamilyCount(person);
+        return count > 0 ? getParentFamily(person, count - 1) : -1;
+    }
+
+    public int getSpouseFamilyCount(int person) {
+        return person < 0 ? 0 : spouseFamilyStart[person + 1] - spouseFamilyStart[person];
+    }
+
+    public int getSpouseFamily(int person, int index) {
+        return spouseFamilyData[spouseFamilyStart[person] + index];
+    }
+
+    /**
+     * @return Position of the family among the spouse families of the person, or -1
+     */
+    public int indexOfSpouseFamily(int person, int family) {
+        return indexOf(spouseFamilyData, spouseFamilyStart, person, family);
+    }
+
+    /**
+     * Checks if the person is child of the family.
+     */
+    public boolean isChild(int person, int family) {
+        return indexOf(parentFamilyData, parentFamilyStart, person, family) >= 0;
+    }
+
+    // Family relations. A family ID of -1 has no members.
+
+    public int getHusbandCount(int family) {
+        return family < 0 ? 0 : husbandStart[family + 1] - husbandStart[family];
+    }
+
+    /**
+     * @return ID of the husband, or -1 if the reference doesn't point to a person
+     */
+    public int getHusband(int family, int index) {
+        return husbandData[husbandStart[family] + index];
+    }
+
+    public int getWifeCount(int family) {
+        return family < 0 ? 0 : wifeStart[family + 1] - wifeStart[family];
+    }
+
+    /**
+     * @return ID of the wife, or -1 if the reference doesn't point to a person
+     */
+    public int getWife(int family, int index) {
+        return wifeData[wifeStart[family] + index];
+    }
+
+    public int getChildCount(int family) {
+        return family < 0 ? 0 : childStart[family + 1] - childStart[family];
+    }
+
+    public int getChild(int family, int index) {
+        return childData[childStart[family] + index];
+    }
+
+    /**
+     * @return Position of the person among the children of the family, or -1
+     */
+    public int indexOfChild(int family, int person) {
+        return indexOf(childData, childStart, family, person);
+    }
+
+    private static int indexOf(int[] data, int[] start, int row, int value) {
+        if (row < 0)
+            return -1;
+        for (int i = start[row]; i < start[row + 1]; i++) {
+            if (data[i] == value)
+                return i - start[row];
+        }
+        return -1;
+    }
+
+    /**
+     * Builder of the arrays of one relation, filled row after row.
+     */
+    private static class Rows {
+        int[] start;
+        int[] data;
+        int row;
+        int size;
+
+        Rows(int rows) {
+            start = new int[rows + 1];
+            data = new int[rows];
+        }
+
+        void add(int value) {
+            if (size == data.length)
+                data = Arrays.copyOf(data, Math.max(16, size * 2));
+            data[size++] = value;
+        }
+
+        void addIfFound(int value) {
+            if (value >= 0)
+                add(value);
+        }
+
+        void endRow() {
+            start[++row] = size;
+        }
+
+        int[] trimmedData() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
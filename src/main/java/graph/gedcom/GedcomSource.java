@@ -0,0 +1,77 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Genealogy source reading from a Gedcom already in memory, e.g. to load diagrams the same way as from a remote store.
+ * The indexes of the Gedcom must have been created with Gedcom.createIndexes().
+ */
+public class GedcomSource implements GenealogySource {
+
+    private final Gedcom gedcom;
+    private GedcomIndex index; // To count ancestors and descendants, created at first request
+    private int personCalls, familyCalls, countCalls; // Number of batches requested
+
+    public GedcomSource(Gedcom gedcom) {
+        this.gedcom = gedcom;
+    }
+
+    @Override
+    public List<Person> fetchPersons(Collection<String> ids) {
+        personCalls++;
+        List<Person> persons = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Person person = gedcom.getPerson(id);
+            if (person != null)
+                persons.add(person);
+        }
+        return persons;
+    }
+
+    @Override
+    public List<Family> fetchFamilies(Collection<String> ids) {
+        familyCalls++;
+        List<Family> families = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Family family = gedcom.getFamily(id);
+            if (family != null)
+                families.add(family);
+        }
+        return families;
+    }
+
+    @Override
+    public int[] countAncestors(List<String> ids) {
+        return count(ids, true);
+    }
+
+    @Override
+    public int[] countDescendants(List<String> ids) {
+        return count(ids, false);
+    }
+
+    private int[] count(List<String> ids, boolean ancestors) {
+        countCalls++;
+        if (index == null)
+            index = new GedcomIndex(gedcom);
+        int[] counts = new int[ids.size()];
+        for (int i = 0; i < counts.length; i++) {
+            int person = index.getId(gedcom.getPerson(ids.get(i)));
+            counts[i] = ancestors ? index.getStatistics().countAncestors(person) : index.getStatistics().countDescendants(person);
+        }
+        return counts;
+    }
+
+    /**
+     * @return Number of calls to fetchPersons(), fetchFamilies() and to the count methods since the creation
+     */
+    public int getCalls() {
+        return personCalls + familyCalls + countCalls;
+    }
+}
@@ -0,0 +1,176 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Person;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Number of distinct ancestors and descendants of the persons of one Gedcom, displayed by the mini cards.
+ * Each person is counted only once, also in case of pedigree collapse.
+ * Counts are memoized, so the object can be shared by many graphs (and threads) working on the same Gedcom.
+ * A count computed concurrently by two threads is just computed twice, with the same result.
+ * The walks are borrowed from a pool rather than kept by each thread, so that many short-lived threads
+ * (e.g. virtual threads) don't allocate new marks for every count.
+ */
+public class GedcomStatistics {
+
+    private final GedcomIndex index;
+    private final int[] ancestors; // Count of each person ID, or -1 if not yet computed
+    private final int[] descendants;
+    private final Queue<Walk> walks = new ConcurrentLinkedQueue<>(); // Walks not in use
+
+    GedcomStatistics(GedcomIndex index) {
+        this.index = index;
+        ancestors = new int[index.getPersonCount()];
+        Arrays.fill(ancestors, -1);
+        descendants = new int[index.getPersonCount()];
+        Arrays.fill(descendants, -1);
+    }
+
+    /**
+     * @return Number of distinct direct ancestors of the person
+     */
+    public int countAncestors(Person person) {
+        return countAncestors(index.getId(person));
+    }
+
+    /**
+     * @return Number of distinct descendants of the person
+     */
+    public int countDescendants(Person person) {
+        return countDescendants(index.getId(person));
+    }
+
+    int countAncestors(int person) {
+        if (person < 0)
+            return 0;
+        int amount = ancestors[person];
+        if (amount < 0) {
+            amount = walk(person, true);
+            ancestors[person] = amount;
+        }
+        return amount;
+    }
+
+    int countDescendants(int person) {
+        if (person < 0)
+            return 0;
+        int amount = descendants[person];
+        if (amount < 0) {
+            amount = walk(person, false);
+            descendants[person] = amount;
+        }
+        return amount;
+    }
+
+    /**
+     * Counts with a walk taken from the pool, or a new one if all are in use, given back at the end.
+     */
+    private int walk(int person, boolean up) {
+        Walk walk = walks.poll();
+        if (walk == null)
+            walk = new Walk();
+        try {
+            return walk.run(person, up);
+        } finally {
+            walks.offer(walk);
+        }
+    }
+
+    /**
+     * Computes in parallel the counts of all the persons of the Gedcom, to have them ready before creating the diagrams.
+     *
+     * @param threads Number of threads to use
+     */
+    public void computeAll(int threads) throws InterruptedException {
+        final int total = index.getPersonCount();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int start = t;
+                final int step = threads;
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = start; i < total; i += step) {
+                            countAncestors(i);
+                            countDescendants(i);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Breadth-first visit of ancestors or descendants, counting each person once.
+     * Arrays are reused by the following visits with the same walk: a person is visited if marked with the actual stamp.
+     */
+    private class Walk {
+        final int[] marks = new int[index.getPersonCount()];
+        int[] queue = new int[16];
+        int stamp;
+
+        int run(int start, boolean up) {
+            if (++stamp == 0) { // Overflow: clears the old marks
+                Arrays.fill(marks, 0);
+                stamp = 1;
+            }
+            int head = 0, tail = 0;
+            marks[start] = stamp;
+            queue[tail++] = start;
+            while (head < tail) {
+                int person = queue[head++];
+                if (up) {
+                    for (int f = 0; f < index.getParentFamilyCount(person); f++) {
+                        int family = index.getParentFamily(person, f);
+                        for (int i = 0; i < index.getHusbandCount(family); i++)
+                            tail = visit(index.getHusband(family, i), tail);
+                        for (int i = 0; i < index.getWifeCount(family); i++)
+                            tail = visit(index.getWife(family, i), tail);
+                    }
+                } else {
+                    for (int f = 0; f < index.getSpouseFamilyCount(person); f++) {
+                        int family = index.getSpouseFamily(person, f);
+                        for (int i = 0; i < index.getChildCount(family); i++)
+                            tail = visit(index.getChild(family, i), tail);
+                    }
+                }
+            }
+            return tail - 1; // Start person excluded
+        }
+
+        /**
+         * Adds the person to the queue if not yet visited.
+         *
+         * @return The new tail of the queue
+         */
+        private int visit(int person, int tail) {
+            if (person < 0 || marks[person] == stamp)
+                return tail;
+            marks[person] = stamp;
+            if (tail == queue.length)
+                queue = Arrays.copyOf(queue, tail * 2);
+            queue[tail] = person;
+            return tail + 1;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.ChildRef;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.ParentFamilyRef;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.model.SpouseFamilyRef;
+import org.folg.gedcom.model.SpouseRef;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads from a genealogy source the neighborhood of a fulcrum into a Gedcom, generation frontier after frontier.
+ * Each person reached has a budget telling how far to go from it: generations up, generations down,
+ * whether to follow its spouse families, and for the fulcrum and its ancestors the generation above the fulcrum,
+ * that tells how many generations of descendants to load for their collateral relatives (siblings, uncles, great-uncles).
+ * Each frontier costs one call for its persons and one for their families.
+ * The Gedcom is kept for the following loads from the same source, which add to it only the records not yet loaded.
+ * The relatives beyond the budget are not loaded, so the numbers of the mini cards are asked to the source and kept as well.
+ */
+class GenealogyLoader {
+
+    private static final int UP = 0, DOWN = 1, SPOUSES = 2, LEVEL = 3;
+    private static final int[] LEAF = {0, 0, 0, -1}; // Person loaded just to be counted or displayed
+
+    private final GenealogySource source;
+    private final Map<String, Person> persons = new LinkedHashMap<>();
+    private final Map<String, Family> families = new LinkedHashMap<>();
+    private final Set<String> missingPersons = new LinkedHashSet<>(); // Requested but not found in the source
+    private final Set<String> missingFamilies = new LinkedHashSet<>();
+    private final Gedcom gedcom = new Gedcom(); // With all the records loaded so far
+    private final Map<String, Integer> ancestorCounts = new HashMap<>(); // Counted by the source
+    private final Map<String, Integer> descendantCounts = new HashMap<>();
+    private final Map<String, int[]> budgets = new LinkedHashMap<>(); // Of the actual load
+    private Set<String> nextFrontier = new LinkedHashSet<>();
+    private boolean grown; // New records added by the actual load
+
+    GenealogyLoader(GenealogySource source) {
+        this.source = source;
+        gedcom.createIndexes(); // Updated by each record added
+    }
+
+    GenealogySource getSource() {
+        return source;
+    }
+
+    Gedcom getGedcom() {
+        return gedcom;
+    }
+
+    /**
+     * @param up         Generations of ancestors to load
+     * @param down       Generations of descendants to load
+     * @param collateral For each generation above the fulcrum, generations of descendants to load below the siblings
+     *                   of the ancestors of that generation. The last value applies also to the generations above.
+     * @return True if records have been added to the Gedcom
+     */
+    boolean load(String fulcrumId, int up, int down, int[] collateral) {
+        budgets.clear();
+        grown = false;
+        offer(fulcrumId, new int[]{up, down, 1, 0});
+        while (!nextFrontier.isEmpty()) {
+            Set<String> frontier = nextFrontier;
+            nextFrontier = new LinkedHashSet<>();
+            fetchPersons(frontier);
+            // Families of the whole frontier in one call
+            Set<String> familyIds = new LinkedHashSet<>();
+            for (String id : frontier) {
+                Person person = persons.get(id);
+                if (person == null)
+                    continue;
+                int[] budget = budgets.get(id);
+                if (budget[UP] > 0) {
+                    for (ParentFamilyRef ref : person.getParentFamilyRefs())
+                        familyIds.add(ref.getRef());
+                }
+                if (budget[SPOUSES] > 0) {
+                    for (SpouseFamilyRef ref : person.getSpouseFamilyRefs())
+                        familyIds.add(ref.getRef());
+                }
+            }
+            fetchFamilies(familyIds);
+            // Members of the families become the next frontier
+            for (String id : frontier) {
+                Person person = persons.get(id);
+                if (person == null)
+                    continue;
+                int[] budget = budgets.get(id);
+                if (budget[UP] > 0) {
+                    for (ParentFamilyRef ref : person.getParentFamilyRefs()) {
+                        Family family = families.get(ref.getRef());
+                        if (family == null)
+                            continue;
+                        int level = budget[LEVEL];
+                        int[] parent = level >= 0 ? new int[]{budget[UP] - 1, 0, 1, level + 1} : new int[]{budget[UP] - 1, 0, 0, -1};
+                        offerSpouses(family, null, parent);
+                        if (level >= 0) // Siblings of the acquired spouses are not displayed
+                            offerChildren(family, descendant(collateral[Math.min(level, collateral.length - 1)]));
+                    }
+                }
+                if (budget[SPOUSES] > 0) {
+                    // Children of an ancestor with another partner are half-siblings, loaded as the collateral relatives
+                    int level = budget[LEVEL];
+                    int childDown = budget[DOWN] - 1;
+                    if (level > 0)
+                        childDown = Math.max(childDown, collateral[Math.min(level - 1, collateral.length - 1)]);
+                    for (SpouseFamilyRef ref : person.getSpouseFamilyRefs()) {
+                        Family family = families.get(ref.getRef());
+                        if (family == null)
+                            continue;
+                        offerSpouses(family, id, new int[]{1, 0, 0, -1}); // With the parents for the mini ancestry
+                        offerChildren(family, descendant(childDown));
+                    }
+                }
+            }
+        }
+        return grown;
+    }
+
+    /**
+     * Asks the source the ancestors and the descendants of the persons not yet counted, in one call for each kind.
+     */
+    void fetchCounts(Collection<String> ancestryIds, Collection<String> progenyIds) {
+        fetchCounts(ancestryIds, ancestorCounts, true);
+        fetchCounts(progenyIds, descendantCounts, false);
+    }
+
+    private void fetchCounts(Collection<String> ids, Map<String, Integer> counts, boolean ancestors) {
+        List<String> newIds = new ArrayList<>();
+        for (String id : ids) {
+            if (!counts.containsKey(id))
+                newIds.add(id);
+        }
+        if (newIds.isEmpty())
+            return;
+        int[] amounts = ancestors ? source.countAncestors(newIds) : source.countDescendants(newIds);
+        for (int i = 0; i < amounts.length; i++)
+            counts.put(newIds.get(i), amounts[i]);
+    }
+
+    /**
+     * @return Ancestors of the person in the source, fetched by fetchCounts()
+     */
+    int getAncestorCount(String id) {
+        Integer count = ancestorCounts.get(id);
+        return count != null ? count : 0;
+    }
+
+    int getDescendantCount(String id) {
+        Integer count = descendantCounts.get(id);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * @param down Generations to load below the person, 0 for just its partners and children, -1 for nothing
+     */
+    private static int[] descendant(int down) {
+        return down >= 0 ? new int[]{0, down, 1, -1} : LEAF;
+    }
+
+    private void offerSpouses(Family family, String excludedId, int[] budget) {
+        for (SpouseRef ref : family.getHusbandRefs()) {
+            if (excludedId == null || !excludedId.equals(ref.getRef()))
+                offer(ref.getRef(), budget);
+        }
+        for (SpouseRef ref : family.getWifeRefs()) {
+            if (excludedId == null || !excludedId.equals(ref.getRef()))
+                offer(ref.getRef(), budget);
+        }
+    }
+
+    private void offerChildren(Family family, int[] budget) {
+        for (ChildRef ref : family.getChildRefs())
+            offer(ref.getRef(), budget);
+    }
+
+    /**
+     * Adds the person to the next frontier, unless already reached with a budget not smaller than this one.
+     */
+    private void offer(String id, int[] budget) {
+        if (id == null)
+            return;
+        int[] old = budgets.get(id);
+        if (old == null) {
+            budgets.put(id, budget.clone());
+            nextFrontier.add(id);
+            return;
+        }
+        boolean grown = false;
+        for (int i = 0; i < budget.length; i++) {
+            if (budget[i] > old[i]) {
+                old[i] = budget[i];
+                grown = true;
+            }
+        }
+        if (grown)
+            nextFrontier.add(id);
+    }
+
+    private void fetchPersons(Collection<String> ids) {
+        List<String> newIds = new ArrayList<>();
+        for (String id : ids) {
+            if (!persons.containsKey(id) && !missingPersons.contains(id))
+                newIds.add(id);
+        }
+        if (newIds.isEmpty())
+            return;
+        for (Person person : source.fetchPersons(newIds)) {
+            if (persons.put(person.getId(), person) == null) {
+                gedcom.addPerson(person);
+                grown = true;
+            }
+        }
+        for (String id : newIds) {
+            if (!persons.containsKey(id))
+                missingPersons.add(id);
+        }
+    }
+
+    private void fetchFamilies(Collection<String> ids) {
+        List<String> newIds = new ArrayList<>();
+        for (String id : ids) {
+            if (id != null && !families.containsKey(id) && !missingFamilies.contains(id))
+                newIds.add(id);
+        }
+        if (newIds.isEmpty())
+            return;
+        for (Family family : source.fetchFamilies(newIds)) {
+            if (families.put(family.getId(), family) == null) {
+                gedcom.addFamily(family);
+                grown = true;
+            }
+        }
+        for (String id : newIds) {
+            if (!families.containsKey(id))
+                missingFamilies.add(id);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Person;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Store of persons and families from which Graph.startFrom(GenealogySource, String) loads only the records of one diagram.
+ * Records are requested in batches, one call for all the persons or all the families of a generation frontier,
+ * so that a store behind a network or a database can answer each batch with a single query.
+ * Relatives are found through the references of the records: parent and spouse families of the persons,
+ * husbands, wives and children of the families.
+ * The numbers of the mini cards are asked to the source too, because the loaded records are not enough to count them.
+ */
+public interface GenealogySource {
+
+    /**
+     * @param ids IDs of the persons, as referenced by the families
+     * @return The persons found, in any order. IDs not found are just missing.
+     */
+    List<Person> fetchPersons(Collection<String> ids);
+
+    /**
+     * @param ids IDs of the families, as referenced by the persons
+     * @return The families found, in any order
+     */
+    List<Family> fetchFamilies(Collection<String> ids);
+
+    /**
+     * @param ids IDs of the persons
+     * @return For each ID, in the same order, the number of distinct direct ancestors of the person in the whole source,
+     * counted as GedcomStatistics does, or 0 if the person is not found
+     */
+    int[] countAncestors(List<String> ids);
+
+    /**
+     * @param ids IDs of the persons
+     * @return For each ID, in the same order, the number of distinct descendants of the person in the whole source,
+     * or 0 if the person is not found
+     */
+    int[] countDescendants(List<String> ids);
+}
@@ -0,0 +1,195 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Card;
+import graph.gedcom.Util.Gender;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Final geometry of a placed diagram packed in float arrays, one record after the other, to be iterated
+ * or uploaded by a renderer in a single pass. Record 'i' of each array corresponds to element 'i' of the element arrays:
+ * for instance the person node of node record 'i' is getPersonNode(i), in the same order of Graph.getPersonNodes().
+ * Created by Graph.exportGeometry(), can be passed again to reuse the arrays.
+ */
+public class GeometryBuffers {
+
+    // Node record: x, y, width, height, flags
+    public static final int NODE_STRIDE = 5;
+    public static final int NODE_FLAGS = 4;
+    public static final int CARD_MASK = 0x3; // Ordinal of the Card type
+    public static final int DEAD = 1 << 2;
+    public static final int DUPLICATE = 1 << 3;
+    public static final int ACQUIRED = 1 << 4;
+    public static final int GENDER_SHIFT = 5; // Ordinal of the Gender in the following 3 bits
+    public static final int GENDER_MASK = 0x7 << GENDER_SHIFT;
+
+    // Bond record: x, y, width, height, flags
+    public static final int BOND_STRIDE = 5;
+    public static final int BOND_FLAGS = 4;
+    public static final int MARRIAGE_DATE = 1; // The bond is an oval with the marriage date
+    public static final int MINI_BOND = 1 << 1;
+
+    // Line record: x1, y1, x2, y2, x3, y3, kind. Only duplicate lines have a third point, the others repeat the second.
+    public static final int LINE_STRIDE = 7;
+    public static final int LINE_KIND = 6;
+    public static final int CURVE_LINE = 0;
+    public static final int VERTICAL_LINE = 1;
+    public static final int HORIZONTAL_LINE = 2;
+    public static final int NEXT_LINE = 3;
+    public static final int BACK_LINE = 4; // Dashed
+    public static final int DUPLICATE_LINE = 5;
+
+    public float[] nodes = new float[0];
+    public float[] bonds = new float[0];
+    public float[] lines = new float[0];
+    public int nodeCount, bondCount, lineCount;
+    private PersonNode[] personNodes = new PersonNode[0];
+    private Bond[] bondElements = new Bond[0];
+    private Line[] lineElements = new Line[0];
+    private ByteBuffer nodeBuffer, bondBuffer, lineBuffer;
+
+    void fill(List<PersonNode> personNodes, GedcomAttributes attributes, List<Bond> bonds, List<Line> lines, List<Line> backLines,
+              List<DuplicateLine> duplicateLines) {
+        nodeCount = personNodes.size();
+        this.nodes = ensure(this.nodes, nodeCount * NODE_STRIDE);
+        if (this.personNodes.length < nodeCount)
+            this.personNodes = new PersonNode[nodeCount];
+        else
+            Arrays.fill(this.personNodes, nodeCount, this.personNodes.length, null);
+        for (int i = 0; i < nodeCount; i++) {
+            PersonNode personNode = personNodes.get(i);
+            this.personNodes[i] = personNode;
+            int flags = personNode.type.ordinal() | attributes.getGender(personNode.personId).ordinal() << GENDER_SHIFT;
+            if (personNode.dead)
+                flags |= DEAD;
+            if (personNode.duplicate)
+                flags |= DUPLICATE;
+            if (personNode.acquired)
+                flags |= ACQUIRED;
+            put(nodes, i * NODE_STRIDE, personNode, flags);
+        }
+
+        bondCount = bonds.size();
+        this.bonds = ensure(this.bonds, bondCount * BOND_STRIDE);
+        if (bondElements.length < bondCount)
+            bondElements = new Bond[bondCount];
+        else
+            Arrays.fill(bondElements, bondCount, bondElements.length, null);
+        for (int i = 0; i < bondCount; i++) {
+            Bond bond = bonds.get(i);
+            bondElements[i] = bond;
+            int flags = 0;
+            if (bond.marriageDate != null)
+                flags |= MARRIAGE_DATE;
+            if (bond.familyNode.mini)
+                flags |= MINI_BOND;
+            put(this.bonds, i * BOND_STRIDE, bond, flags);
+        }
+
+        lineCount = lines.size() + backLines.size() + duplicateLines.size();
+        this.lines = ensure(this.lines, lineCount * LINE_STRIDE);
+        if (lineElements.length < lineCount)
+            lineElements = new Line[lineCount];
+        else
+            Arrays.fill(lineElements, lineCount, lineElements.length, null);
+        int i = 0;
+        for (Line line : lines)
+            put(i++, line);
+        for (Line line : backLines)
+            put(i++, line);
+        for (Line line : duplicateLines)
+            put(i++, line);
+    }
+
+    private static float[] ensure(float[] array, int length) {
+        return array.length < length ? new float[length] : array;
+    }
+
+    private static void put(float[] array, int offset, Metric metric, int flags) {
+        array[offset] = metric.x;
+        array[offset + 1] = metric.y;
+        array[offset + 2] = metric.width;
+        array[offset + 3] = metric.height;
+        array[offset + 4] = flags;
+    }
+
+    private void put(int index, Line line) {
+        lineElements[index] = line;
+        int offset = index * LINE_STRIDE;
+        lines[offset] = line.x1;
+        lines[offset + 1] = line.y1;
+        lines[offset + 2] = line.x2;
+        lines[offset + 3] = line.y2;
+        if (line instanceof DuplicateLine) {
+            lines[offset + 4] = ((DuplicateLine)line).x3;
+            lines[offset + 5] = ((DuplicateLine)line).y3;
+        } else {
+            lines[offset + 4] = line.x2;
+            lines[offset + 5] = line.y2;
+        }
+        lines[offset + 6] = kindOf(line);
+    }
+
+    private static int kindOf(Line line) {
+        if (line instanceof CurveLine)
+            return CURVE_LINE;
+        if (line instanceof VerticalLine)
+            return VERTICAL_LINE;
+        if (line instanceof HorizontalLine)
+            return HORIZONTAL_LINE;
+        if (line instanceof NextLine)
+            return NEXT_LINE;
+        if (line instanceof BackLine)
+            return BACK_LINE;
+        return DUPLICATE_LINE;
+    }
+
+    public PersonNode getPersonNode(int index) {
+        return personNodes[index];
+    }
+
+    public Bond getBond(int index) {
+        return bondElements[index];
+    }
+
+    public Line getLine(int index) {
+        return lineElements[index];
+    }
+
+    public static Card getCard(int flags) {
+        return Card.values()[flags & CARD_MASK];
+    }
+
+    public static Gender getGender(int flags) {
+        return Gender.values()[(flags & GENDER_MASK) >> GENDER_SHIFT];
+    }
+
+    // Direct buffers in native order with the same records, e.g. to be uploaded to OpenGL. Reused while big enough.
+
+    public ByteBuffer getNodeBuffer() {
+        nodeBuffer = toBuffer(nodeBuffer, nodes, nodeCount * NODE_STRIDE);
+        return nodeBuffer;
+    }
+
+    public ByteBuffer getBondBuffer() {
+        bondBuffer = toBuffer(bondBuffer, bonds, bondCount * BOND_STRIDE);
+        return bondBuffer;
+    }
+
+    public ByteBuffer getLineBuffer() {
+        lineBuffer = toBuffer(lineBuffer, lines, lineCount * LINE_STRIDE);
+        return lineBuffer;
+    }
+
+    private static ByteBuffer toBuffer(ByteBuffer buffer, float[] array, int length) {
+        if (buffer == null || buffer.capacity() < length * 4)
+            buffer = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder());
+        buffer.clear();
+        buffer.asFloatBuffer().put(array, 0, length);
+        buffer.limit(length * 4);
+        return buffer;
+    }
+}
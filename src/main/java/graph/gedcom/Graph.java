@@ -1,14 +1,21 @@
 package graph.gedcom;
 
+import graph.gedcom.LayoutStats.Phase;
 import graph.gedcom.Util.*;
 import org.folg.gedcom.model.Family;
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.model.Person;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main public class to build the tree diagram, responsible to collect all the relatives around a fulcrum person.
@@ -29,7 +36,19 @@ public class Graph {
     private boolean withDuplicateLines = true; // Displays lines connecting duplicate persons
 
     private Gedcom gedcom;
+    private GedcomIndex index; // Relationships of the Gedcom, built at first startFrom() if not provided
+    private GenealogyLoader loader; // Records and counts loaded by startFrom(GenealogySource, String), null with another Gedcom
+    private GedcomAttributes attributes;
     private final Animator animator;
+    private LayoutStats stats; // Null if not collected
+    private LayoutConfig layoutConfig;
+    private SpatialIndex viewportIndex; // Created by the first viewport query after each placement
+    private LayoutCache layoutCache; // Null if disabled
+    private LayoutConfig config; // Layout configuration applied to the actual diagram
+    private Map<Person, List<PersonNode>> reusableNodes; // Person nodes of the previous diagram, while re-centering
+    private final List<PersonNode> newPersonNodes = new ArrayList<>(); // Person nodes created by the last re-centering
+    private final Set<Family> expandedAncestries = new HashSet<>(); // Mini ancestries displayed as regular ancestors by expand()
+    private final Set<Person> expandedProgenies = new HashSet<>(); // Mini progenies displayed as regular descendants by expand()
     private Group fulcrumGroup;
     private int maxAbove; // Max upper generation of ancestors (positive number), excluding mini ancestries
     private int maxBelow; // Max generation of descendants, excluding mini progenies
@@ -37,12 +56,69 @@ public class Graph {
 
     public Graph() {
         animator = new Animator();
+        layoutConfig = new LayoutConfig.Builder().build();
     }
 
     // Public methods
 
+    /**
+     * To be called again after the Gedcom has been modified, to rebuild the index of relationships.
+     * Added or removed persons and families are also detected by the next startFrom().
+     */
     public Graph setGedcom(Gedcom gedcom) {
         this.gedcom = gedcom;
+        index = null;
+        loader = null;
+        if (layoutCache != null)
+            layoutCache.clear();
+        clearExpansions();
+        return this;
+    }
+
+    /**
+     * Shares an index already built for the same Gedcom, together with its ancestor and descendant counts.
+     * Can be used instead of setGedcom().
+     */
+    public Graph setGedcomIndex(GedcomIndex index) {
+        gedcom = index.getGedcom();
+        this.index = index;
+        loader = null;
+        if (layoutCache != null)
+            layoutCache.clear();
+        clearExpansions();
+        return this;
+    }
+
+    public GedcomIndex getGedcomIndex() {
+        if (index == null || index.isStale()) {
+            if (index != null && layoutCache != null)
+                layoutCache.clear(); // The diagrams of the modified Gedcom could be different
+            index = new GedcomIndex(gedcom);
+        }
+        return index;
+    }
+
+    /**
+     * Copies all the settings of another graph, Gedcom and index included, to create a diagram with the same options.
+     * The layout cache is not copied, because each diagram of a batch is placed only once.
+     */
+    public Graph copySettings(Graph template) {
+        gedcom = template.gedcom;
+        index = template.index;
+        whichFamily = template.whichFamily;
+        ancestorGenerations = template.ancestorGenerations;
+        greatUnclesGenerations = template.greatUnclesGenerations;
+        withSpouses = template.withSpouses;
+        descendantGenerations = template.descendantGenerations;
+        siblingNephewGenerations = template.siblingNephewGenerations;
+        uncleCousinGenerations = template.uncleCousinGenerations;
+        withNumbers = template.withNumbers;
+        withDuplicateLines = template.withDuplicateLines;
+        layoutConfig = template.layoutConfig;
+        setLayoutDirection(template.leftToRight);
+        animator.maxBitmapSize = template.animator.maxBitmapSize;
+        animator.pool = template.animator.pool;
+        collectLayoutStats(template.stats != null);
         return this;
     }
 
@@ -89,8 +165,6 @@ public class Graph {
 
     public Graph displayNumbers(boolean display) {
         withNumbers = display;
-        Util.VERTICAL_SPACE_CALC = display ? Util.VERTICAL_SPACE : Util.VERTICAL_SPACE / 2;
-        Util.LITTLE_GROUP_DISTANCE_CALC = display ? Util.LITTLE_GROUP_DISTANCE : Util.LITTLE_GROUP_DISTANCE / 2;
         return this;
     }
 
@@ -99,12 +173,68 @@ public class Graph {
         return this;
     }
 
+    /**
+     * Sets the spaces between the elements of the diagram, applied from the next startFrom().
+     */
+    public Graph setLayoutConfig(LayoutConfig layoutConfig) {
+        this.layoutConfig = layoutConfig;
+        return this;
+    }
+
+    public LayoutConfig getLayoutConfig() {
+        return layoutConfig;
+    }
+
     public Graph setLayoutDirection(boolean leftToRight) {
         this.leftToRight = leftToRight;
         animator.leftToRight = leftToRight;
         return this;
     }
 
+    /**
+     * Places the paternal and maternal ancestor columns in parallel, useful for diagrams with many ancestor generations.
+     *
+     * @param pool Pool executing the layout of the columns, or null (default) to lay out all the diagram in the calling thread
+     */
+    public Graph setForkJoinPool(ForkJoinPool pool) {
+        animator.pool = pool;
+        return this;
+    }
+
+    /**
+     * Collects the measures of each phase of the diagram creation, available through getLayoutStats().
+     * Disabled by default, when it doesn't add any measuring work.
+     */
+    public Graph collectLayoutStats(boolean collect) {
+        stats = collect ? new LayoutStats() : null;
+        return this;
+    }
+
+    /**
+     * Keeps the placement of the last diagrams, so that placeNodes() of a diagram already seen, with the same settings
+     * and card sizes, just restores it. The cache is cleared by setGedcom() and setGedcomIndex().
+     *
+     * @param cache A new cache, or null (default) to place every diagram from scratch
+     */
+    public Graph setLayoutCache(LayoutCache cache) {
+        layoutCache = cache;
+        return this;
+    }
+
+    /**
+     * @return The layout cache with its hit and miss counters, or null if not enabled
+     */
+    public LayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
+    /**
+     * @return Measures of the last startFrom(), initNodes(), placeNodes() and placeResizedNodes(), or null if not collected
+     */
+    public LayoutStats getLayoutStats() {
+        return stats;
+    }
+
     public float getWidth() {
         return animator.width;
     }
@@ -137,10 +267,20 @@ public class Graph {
         return animator.biggestPathSize;
     }
 
+    /**
+     * @return The continuous lines in groups to be drawn together, each one a LineTile with its bounds.
+     * A line crossing more tiles is in each of them, and each tile draws only the part inside its rectangle.
+     * Lines too long for the grid are whole in the last tile, the overflow one, to be drawn without clipping.
+     */
     public List<Set<Line>> getLines() {
         return animator.lineGroups;
     }
 
+    /**
+     * @return The back (dashed) lines in groups to be drawn together, each one a LineTile with its bounds.
+     * A line crossing more tiles is in each of them, and each tile draws only the part inside its rectangle.
+     * Lines too long for the grid are whole in the last tile, the overflow one, to be drawn without clipping.
+     */
     public List<Set<Line>> getBackLines() {
         return animator.backLineGroups;
     }
@@ -149,14 +289,244 @@ public class Graph {
         return animator.duplicateLines;
     }
 
+    /**
+     * Indexes the position of person nodes, bonds and lines to find them by coordinates.
+     * To be called after placeNodes(), and again after any following placement.
+     */
+    public SpatialIndex createSpatialIndex() {
+        return new SpatialIndex(animator.personNodes, animator.bonds, animator.lines, animator.backLines, animator.duplicateLines);
+    }
+
+    /**
+     * Collects the elements intersecting the viewport rectangle, so that a renderer can draw only them.
+     * The collections are cleared before, and can be reused from one frame to the next without creating garbage.
+     *
+     * @param personNodes Receives the person nodes, or null if not needed
+     * @param bonds       Receives the bonds, or null
+     * @param lines       Receives lines, back lines and duplicate lines, or null
+     */
+    public void findInViewport(float left, float top, float right, float bottom, Collection<? super PersonNode> personNodes,
+                               Collection<? super Bond> bonds, Collection<? super Line> lines) {
+        if (viewportIndex == null)
+            viewportIndex = createSpatialIndex();
+        if (personNodes != null) {
+            personNodes.clear();
+            viewportIndex.queryNodes(left, top, right, bottom, personNodes);
+        }
+        if (bonds != null) {
+            bonds.clear();
+            viewportIndex.queryBonds(left, top, right, bottom, bonds);
+        }
+        if (lines != null) {
+            lines.clear();
+            viewportIndex.queryLines(left, top, right, bottom, lines);
+        }
+    }
+
+    /**
+     * Packs the placed geometry of person nodes, bonds and lines in float arrays, to be drawn without visiting the objects.
+     * To be called after placeNodes(), and again after any following placement.
+     *
+     * @param reuse The buffers of a previous export, whose arrays are reused if big enough, or null to create new ones
+     */
+    public GeometryBuffers exportGeometry(GeometryBuffers reuse) {
+        GeometryBuffers buffers = reuse != null ? reuse : new GeometryBuffers();
+        buffers.fill(animator.personNodes, attributes, animator.bonds, animator.lines, animator.backLines, animator.duplicateLines);
+        return buffers;
+    }
+
+    /**
+     * Saves the placed diagram in a binary snapshot, to be reloaded with DiagramSnapshot.wrap() or map().
+     * To be called after placeNodes(), and again after any following placement.
+     *
+     * @return A buffer with the snapshot from position 0 to the limit
+     */
+    public ByteBuffer createSnapshot() {
+        GeometryBuffers geometry = exportGeometry(null);
+        return DiagramSnapshot.encode(geometry, animator.lineGroups, animator.backLineGroups, animator.width, animator.height,
+                animator.maxBitmapSize, animator.biggestPathSize, leftToRight);
+    }
+
+    /**
+     * @return Number of iterations used by the last placeNodes() to resolve the horizontal position of nodes (max 100)
+     */
+    public int getLayoutIterations() {
+        return animator.iterations;
+    }
+
+    /**
+     * @return Max horizontal shift of a node in the last iteration of placeNodes(): more than 1 means the layout didn't converge
+     */
+    public float getLayoutResidual() {
+        return animator.residual;
+    }
+
     // Preparation of the nodes
     public void initNodes() {
+        viewportIndex = null;
+        if (stats != null)
+            stats.begin();
         animator.initNodes(fulcrumGroup, maxAbove, maxBelow, withNumbers);
+        if (stats != null)
+            stats.end(Phase.INIT_NODES, animator);
     }
 
     // Final displacement of the nodes
     public void placeNodes() {
-        animator.placeNodes();
+        viewportIndex = null;
+        if (stats != null)
+            stats.begin();
+        LayoutCache.Key key = null;
+        float[] placement = null;
+        if (layoutCache != null) {
+            key = createLayoutKey();
+            placement = layoutCache.get(key);
+        }
+        if (placement == null || !animator.restorePlacement(placement)) {
+            animator.placeNodes();
+            if (key != null)
+                layoutCache.put(key, animator.savePlacement());
+        }
+        if (stats != null)
+            stats.end(Phase.PLACE_NODES, animator);
+    }
+
+    /**
+     * @return The key of the actual diagram in the layout cache
+     */
+    private LayoutCache.Key createLayoutKey() {
+        float[] sizes = new float[animator.personNodes.size() * 2];
+        for (int i = 0; i < animator.personNodes.size(); i++) {
+            PersonNode personNode = animator.personNodes.get(i);
+            sizes[i * 2] = personNode.width;
+            sizes[i * 2 + 1] = personNode.height;
+        }
+        int[] settings = {whichFamily, ancestorGenerations, greatUnclesGenerations, withSpouses ? 1 : 0, descendantGenerations,
+                siblingNephewGenerations, uncleCousinGenerations, withNumbers ? 1 : 0, withDuplicateLines ? 1 : 0, leftToRight ? 1 : 0};
+        String[] families = new String[expandedAncestries.size()];
+        int i = 0;
+        for (Family family : expandedAncestries)
+            families[i++] = family.getId();
+        Arrays.sort(families);
+        String[] persons = new String[expandedProgenies.size()];
+        i = 0;
+        for (Person person : expandedProgenies)
+            persons[i++] = person.getId();
+        Arrays.sort(persons);
+        return new LayoutCache.Key(fulcrum.getId(), settings, families, persons, config, sizes);
+    }
+
+    /**
+     * Changes the size of a person node after placeNodes(), for instance when its photo has been loaded.
+     * The new size is applied by placeResizedNodes(), so the width and height of the node should not be modified directly.
+     */
+    public void resizeNode(PersonNode personNode, float width, float height) {
+        animator.resizeNode(personNode, width, height);
+    }
+
+    /**
+     * Updates the diagram after one or more resizeNode(): the resized nodes keep their center, and only the nodes
+     * they overlap slide away, together with the descendants and ancestors of their columns. Mini nodes, lines and
+     * the vertical position of the rows are updated too.
+     */
+    public void placeResizedNodes() {
+        viewportIndex = null;
+        if (stats != null)
+            stats.begin();
+        animator.placeResizedNodes();
+        if (stats != null)
+            stats.end(Phase.PLACE_RESIZED_NODES, animator);
+    }
+
+    /**
+     * Prepares the diagram starting from a new fulcrum, typically a relative of the actual one, taking the person nodes
+     * that remain in the diagram with the same card type. The diagram is built by the same walk of startFrom() and must be
+     * placed again by initNodes() and placeNodes(): what is saved is the measure of the cards, because the reused nodes keep
+     * their width and height and only the ones returned by getNewPersonNodes() need to be measured before initNodes().
+     *
+     * @param fulcrum The person that becomes the diagram center
+     */
+    public void recenterTo(Person fulcrum) {
+        reusableNodes = new HashMap<>();
+        for (PersonNode personNode : animator.personNodes) {
+            List<PersonNode> nodes = reusableNodes.get(personNode.person);
+            if (nodes == null) {
+                nodes = new ArrayList<>(1);
+                reusableNodes.put(personNode.person, nodes);
+            }
+            nodes.add(personNode);
+        }
+        newPersonNodes.clear();
+        try {
+            startFrom(fulcrum);
+        } finally {
+            reusableNodes = null;
+        }
+    }
+
+    /**
+     * @return The person nodes created new by the last recenterTo(), without size
+     */
+    public List<PersonNode> getNewPersonNodes() {
+        return newPersonNodes;
+    }
+
+    /**
+     * Turns a mini card into regular nodes for one generation: the couple of a mini ancestry above a direct ancestor
+     * becomes regular ancestors with their own mini ancestries, the child of a mini progeny becomes a regular descendant
+     * with spouses and their own mini progenies, while the siblings keep their mini cards in the same row.
+     * As in recenterTo(), the diagram is rebuilt reusing the actual person nodes, so only the ones in getNewPersonNodes()
+     * need to be measured before initNodes() and placeNodes().
+     * Expansions are kept by the following startFrom() with the same fulcrum, and forgotten when the fulcrum or the Gedcom change.
+     *
+     * @param mini A person node of type ANCESTRY or PROGENY
+     * @return False if the node can't be expanded, i.e. a mini ancestry of an acquired spouse or a mini progeny above the fulcrum row:
+     * the diagram is left untouched
+     */
+    public boolean expand(PersonNode mini) {
+        if (mini.type == Card.ANCESTRY && !mini.acquired && mini.familyNode != null) {
+            if (!expandedAncestries.add(mini.familyNode.spouseFamily))
+                return false;
+        } else if (mini.type == Card.PROGENY && mini.generation >= 0) { // Regular descendants can't stay in the ancestor rows
+            if (!expandedProgenies.add(mini.person))
+                return false;
+        } else
+            return false;
+        recenterTo(fulcrum);
+        return true;
+    }
+
+    private void clearExpansions() {
+        expandedAncestries.clear();
+        expandedProgenies.clear();
+    }
+
+    /**
+     * Loads from the source only the persons and families needed by the actual settings around the fulcrum,
+     * asking the relatives of each generation frontier in one batch, then prepares the diagram as startFrom(Person).
+     * The records are added to a Gedcom kept for the following calls with the same source, which replaces the Gedcom
+     * of the graph at the first call. The numbers of the mini cards are asked to the source.
+     *
+     * @param fulcrumId ID of the person that becomes the diagram center
+     * @return The fulcrum, or null if the source doesn't have it (and the diagram is left unchanged)
+     */
+    public Person startFrom(GenealogySource source, String fulcrumId) {
+        if (loader == null || loader.getSource() != source) {
+            GenealogyLoader newLoader = new GenealogyLoader(source);
+            setGedcom(newLoader.getGedcom());
+            loader = newLoader;
+        }
+        // Generations below siblings (nephews), uncles (cousins) and great-uncles (their mini progeny). Uncles are
+        // displayed also as the first generation of great-uncles.
+        int uncles = greatUnclesGenerations > 0 ? Math.max(uncleCousinGenerations - 1, 0) : uncleCousinGenerations - 1;
+        int[] collateral = {siblingNephewGenerations - 1, uncles, 0};
+        if (loader.load(fulcrumId, ancestorGenerations + 1, descendantGenerations, collateral))
+            index = null; // New records to index, while the cached placements and the expansions remain valid
+        Person fulcrum = gedcom.getPerson(fulcrumId);
+        if (fulcrum == null)
+            return null;
+        startFrom(fulcrum);
+        return fulcrum;
     }
 
     /**
@@ -164,12 +534,25 @@ public class Graph {
      *
      * @param fulcrum The person that becomes the diagram center
      */
+    @SuppressWarnings("deprecation") // Writes the CALC fields of Util
     public void startFrom(Person fulcrum) {
+        viewportIndex = null;
+        if (stats != null)
+            stats.begin();
+        if (!fulcrum.equals(this.fulcrum))
+            clearExpansions();
         this.fulcrum = fulcrum;
+        attributes = getGedcomIndex().getAttributes();
+        config = layoutConfig.forNumbers(withNumbers);
+        animator.config = config;
+        Util.VERTICAL_SPACE_CALC = config.verticalSpace; // Still written for the drawings that read them
+        Util.LITTLE_GROUP_DISTANCE_CALC = config.littleGroupDistance;
 
         // Reset all values
         animator.nodes.clear();
         animator.personNodes.clear();
+        animator.personIndex.clear();
+        animator.spouseIndex.clear();
         animator.bonds.clear();
         animator.groups.clear();
         animator.duplicateLines.clear();
@@ -177,23 +560,25 @@ public class Graph {
         maxBelow = 0;
 
         // Creates all the nodes of the diagram
-        List<Family> parentFamilies = fulcrum.getParentFamilies(gedcom);
+        int fulcrumId = index.getId(fulcrum);
+        int parentFamilies = index.getParentFamilyCount(fulcrumId);
         fulcrumGroup = createGroup(0, false, Branch.NONE);
-        if (!parentFamilies.isEmpty()) {
+        if (parentFamilies > 0) {
             // Creation of parent nodes of fulcrum
-            if (whichFamily >= parentFamilies.size())
-                whichFamily = parentFamilies.size() - 1; // To prevent IndexOutOfBoundsException
+            if (whichFamily >= parentFamilies)
+                whichFamily = parentFamilies - 1; // To prevent IndexOutOfBoundsException
             else if (whichFamily < 0)
                 whichFamily = 0; // To prevent ArrayIndexOutOfBoundsException
-            Family parentFamily = parentFamilies.get(whichFamily);
-            boolean parentMini = ancestorGenerations == 0;
+            int parentFamilyId = index.getParentFamily(fulcrumId, whichFamily);
+            Family parentFamily = index.getFamily(parentFamilyId);
+            boolean parentMini = ancestorGenerations == 0 && !expandedAncestries.contains(parentFamily);
             Group firstParentGroup = null;
             Node parentNode = createNodeFromFamily(parentFamily, -1, parentMini ? Card.ANCESTRY : Card.REGULAR);
             int parentSize = parentNode.getPersonNodes().size();
             PersonNode first = parentNode.getPartner(0);
             PersonNode second = parentNode.getPartner(1);
             boolean parentSiblings = areSiblings(first, second);
-            if (parentSize > 0 && ancestorGenerations > 0) {
+            if (parentSize > 0 && !parentMini) {
                 parentNode.isAncestor = true;
                 if (parentSiblings)
                     second.origin = parentNode;
@@ -210,8 +595,10 @@ public class Graph {
             }
             // Fulcrum with marriages and siblings
             Genus fulcrumGenus = findPersonGenus(fulcrum, parentNode, 0, Card.FULCRUM, null);
-            for (Person sibling : parentFamily.getChildren(gedcom)) {
-                if (sibling.equals(fulcrum)) {
+            for (int i = 0; i < index.getChildCount(parentFamilyId); i++) {
+                int siblingId = index.getChild(parentFamilyId, i);
+                Person sibling = index.getPerson(siblingId);
+                if (siblingId == fulcrumId) {
                     for (Node node : fulcrumGenus) {
                         fulcrumGroup.addNode(node);
                         findDescendants(node, 0, descendantGenerations + 1, false); // + 1 because we start from the generation before
@@ -224,7 +611,7 @@ public class Graph {
                 }
             }
             // Find relatives on the right of fulcrum
-            if (parentSize > 0 && ancestorGenerations > 0) {
+            if (parentSize > 0 && !parentMini) {
                 if (second == null) { // Single parent
                     findHalfSiblings(first, parentFamily, Side.RIGHT);
                     assert first != null;
@@ -250,10 +637,35 @@ public class Graph {
                 findDescendants(node, 0, descendantGenerations + 1, false); // + 1 because we start from the generation before
             }
         }
+        if (loader != null)
+            countFromSource();
+        if (stats != null)
+            stats.end(Phase.START_FROM, animator);
+    }
+
+    /**
+     * Replaces the numbers of the mini cards, counted on the loaded records only, with the counts of the whole source.
+     */
+    private void countFromSource() {
+        List<String> ancestries = new ArrayList<>();
+        List<String> progenies = new ArrayList<>();
+        for (PersonNode personNode : animator.personNodes) {
+            if (personNode.type == Card.ANCESTRY)
+                ancestries.add(personNode.person.getId());
+            else if (personNode.type == Card.PROGENY)
+                progenies.add(personNode.person.getId());
+        }
+        loader.fetchCounts(ancestries, progenies);
+        for (PersonNode personNode : animator.personNodes) {
+            if (personNode.type == Card.ANCESTRY)
+                personNode.amount = 1 + loader.getAncestorCount(personNode.person.getId());
+            else if (personNode.type == Card.PROGENY)
+                personNode.amount = 1 + loader.getDescendantCount(personNode.person.getId());
+        }
     }
 
     /**
-     * Recursive method to generate the nodes of siblings (great-uncles) and parents of an ancestor.
+     * Generates the nodes of siblings (great-uncles) and parents of an ancestor, then of the ancestors of the parents and so on.
      *
      * @param commonNode     The node with the person to start from
      * @param group          Where to add the ancestor and their siblings (great-uncles)
@@ -261,6 +673,32 @@ public class Graph {
      * @param siblingPartner If true, means that commonNode is sibling of their partner
      */
     private void findAncestors(PersonNode commonNode, Group group, int generationUp, boolean siblingPartner) {
+        runSteps(ancestorStep(commonNode, group, generationUp, siblingPartner));
+    }
+
+    private Step ancestorStep(final PersonNode commonNode, final Group group, final int generationUp, final boolean siblingPartner) {
+        return new Step() {
+            @Override
+            void run(List<Step> next) {
+                findParents(commonNode, group, generationUp, siblingPartner, next);
+            }
+        };
+    }
+
+    private Step ancestorGenusStep(final PersonNode personNode, final Group group, final Side side) {
+        return new Step() {
+            @Override
+            void run(List<Step> next) {
+                findAncestorGenus(personNode, group, side);
+            }
+        };
+    }
+
+    /**
+     * One generation of findAncestors(): the parents of commonNode and their siblings.
+     * The ancestors of the parents and their other marriages are left to the next steps.
+     */
+    private void findParents(PersonNode commonNode, Group group, int generationUp, boolean siblingPartner, List<Step> next) {
         // In case commonNode is the second partner and sibling of first one
         List<PersonNode> partners = commonNode.getFamilyNode().getPersonNodes();
         if (siblingPartner && partners.indexOf(commonNode) == 1) {
@@ -269,13 +707,13 @@ public class Graph {
         }
         if (commonNode.duplicate)
             return;
-        List<Family> parentFamilies = commonNode.person.getParentFamilies(gedcom);
-        if (!parentFamilies.isEmpty()) {
-            Family family = parentFamilies.get(parentFamilies.size() - 1); // Always last family
-            int parentGen = generationUp + 1;
-            boolean parentMini = parentGen > ancestorGenerations;
+        int familyId = index.getLastParentFamily(commonNode.personId); // Always last family
+        if (familyId >= 0) {
+            Family family = index.getFamily(familyId);
+            final int parentGen = generationUp + 1;
+            final boolean parentMini = parentGen > ancestorGenerations && !expandedAncestries.contains(family);
             Group firstParentGroup = createGroup(-parentGen, parentMini, null);
-            FamilyNode parentNode = createNodeFromFamily(family, -parentGen, parentMini ? Card.ANCESTRY : Card.REGULAR);
+            final FamilyNode parentNode = createNodeFromFamily(family, -parentGen, parentMini ? Card.ANCESTRY : Card.REGULAR);
             commonNode.origin = parentNode;
             // Add the great-uncles (siblings of ancestor) with their spouses
             if (generationUp > 1) { // Uncles of the parents generation (1) are found before
@@ -291,31 +729,36 @@ public class Graph {
                 return;
             parentNode.isAncestor = true;
             PersonNode first = parentNode.getPartner(0);
-            PersonNode second = parentSize > 1 ? parentNode.getPartner(1) : null;
+            final PersonNode second = parentSize > 1 ? parentNode.getPartner(1) : null;
             boolean siblingParents = areSiblings(first, second);
             firstParentGroup.branch = parentSize > 1 && !siblingParents ? Branch.PATER : Branch.NONE;
             firstParentGroup.addNode(parentNode);
             if (parentGen > maxAbove && !parentMini)
                 maxAbove = parentGen;
-            // Recalls this method
-            if (generationUp < ancestorGenerations) {
+            // Next generation
+            if (!parentMini) {
                 if (second != null) {
                     // First parent
-                    findAncestors(first, firstParentGroup, parentGen, siblingParents);
-                    findAncestorGenus(first, firstParentGroup, Side.LEFT); // Other marriages of first
+                    next.add(ancestorStep(first, firstParentGroup, parentGen, siblingParents));
+                    next.add(ancestorGenusStep(first, firstParentGroup, Side.LEFT)); // Other marriages of first
                     // Second parent
                     if (siblingParents) {
-                        findAncestors(second, firstParentGroup, parentGen, true);
-                        findAncestorGenus(second, firstParentGroup, Side.RIGHT);
+                        next.add(ancestorStep(second, firstParentGroup, parentGen, true));
+                        next.add(ancestorGenusStep(second, firstParentGroup, Side.RIGHT));
                     } else {
-                        Group secondParentGroup = createGroup(-parentGen, parentMini, Branch.MATER);
-                        secondParentGroup.addNode(parentNode);
-                        findAncestors(second, secondParentGroup, parentGen, false);
-                        findAncestorGenus(second, secondParentGroup, Side.RIGHT);
+                        next.add(new Step() { // Group created after the ancestors of the first parent
+                            @Override
+                            void run(List<Step> next) {
+                                Group secondParentGroup = createGroup(-parentGen, parentMini, Branch.MATER);
+                                secondParentGroup.addNode(parentNode);
+                                next.add(ancestorStep(second, secondParentGroup, parentGen, false));
+                                next.add(ancestorGenusStep(second, secondParentGroup, Side.RIGHT));
+                            }
+                        });
                     }
                 } else { // Single parent
-                    findAncestors(first, firstParentGroup, parentGen, false);
-                    findAncestorGenus(first, firstParentGroup, Gender.isFemale(first.person) ? Side.RIGHT : Side.LEFT);
+                    next.add(ancestorStep(first, firstParentGroup, parentGen, false));
+                    next.add(ancestorGenusStep(first, firstParentGroup, attributes.getGender(first.personId) == Gender.FEMALE ? Side.RIGHT : Side.LEFT));
                 }
             }
         }
@@ -328,8 +771,11 @@ public class Graph {
         Genus genus = new Genus();
         genus.add(personNode.familyNode);
         if (personNode.type == Card.REGULAR && withSpouses && !personNode.duplicate) {
-            List<Family> families = personNode.person.getSpouseFamilies(gedcom);
-            if (families.size() > 1) {
+            int personId = personNode.personId;
+            if (index.getSpouseFamilyCount(personId) > 1) {
+                List<Family> families = new ArrayList<>();
+                for (int i = 0; i < index.getSpouseFamilyCount(personId); i++)
+                    families.add(index.getFamily(index.getSpouseFamily(personId, i)));
                 families.remove(personNode.spouseFamily);
                 int generation = personNode.generation;
                 for (int i = 0; i < families.size(); i++) {
@@ -372,19 +818,18 @@ public class Graph {
             Node origin = personNode.origin;
             if (origin != null) {
                 Branch branch = group.branch;
-                Person person = personNode.person;
-                List<Person> uncles = origin.spouseFamily.getChildren(gedcom);
+                int familyId = index.getId(origin.spouseFamily);
                 int start = 0;
-                int end = uncles.size();
+                int end = index.getChildCount(familyId);
                 if (branch == Branch.NONE) { // Not particular paternal or maternal uncles (could be on both sides of ancestor)
                     if (side == Side.LEFT)
-                        end = uncles.indexOf(person); // From beginning until ancestor
+                        end = index.indexOfChild(familyId, personNode.personId); // From beginning until ancestor
                     else if (side == Side.RIGHT)
-                        start = uncles.indexOf(person) + 1; // From ancestor + 1 to the end
+                        start = index.indexOfChild(familyId, personNode.personId) + 1; // From ancestor + 1 to the end
                 }
                 int position = 0; // To place uncles and their spouses at the beginning
                 for (int i = start; i < end; i++) {
-                    Person uncle = uncles.get(i);
+                    Person uncle = index.getPerson(index.getChild(familyId, i));
                     if (!group.contains(uncle)) {
                         // Uncles if visible are always regular, never mini card
                         Genus uncleGenus = findPersonGenus(uncle, origin, -generationUp, Card.REGULAR, null);
@@ -414,18 +859,19 @@ public class Graph {
         if (!withSpouses) {
             // Finds suitable half-siblings
             List<Person> halfSiblings = new ArrayList<>();
-            List<Family> families = parentNode.person.getSpouseFamilies(gedcom);
+            int personId = parentNode.personId;
+            int excludedId = index.getId(excluded);
             int start = 0;
-            int end = families.size();
+            int end = index.getSpouseFamilyCount(personId);
             if (side == Side.LEFT) {
-                end = families.indexOf(excluded);
+                end = index.indexOfSpouseFamily(personId, excludedId);
             } else if (side == Side.RIGHT) {
-                start = families.indexOf(excluded) + 1;
+                start = index.indexOfSpouseFamily(personId, excludedId) + 1;
             }
             for (int i = start; i < end; i++) {
-                Family family = families.get(i);
-                if (!family.equals(excluded))
-                    halfSiblings.addAll(family.getChildren(gedcom));
+                int familyId = index.getSpouseFamily(personId, i);
+                if (familyId != excludedId)
+                    addChildren(familyId, halfSiblings);
             }
             // Creates nodes
             for (Person halfSibling : halfSiblings) {
@@ -441,7 +887,7 @@ public class Graph {
     }
 
     /**
-     * Recursive method to find the descendants.
+     * Finds the descendants, generation after generation.
      *
      * @param commonNode      Node containing the person/family of whom to find descendants. Can be a PersonNode or a FamilyNode.
      * @param startGeneration Number of the generation of the first 'commonNode': -1 for parents, 0 for fulcrum, 1 for children etc.
@@ -449,38 +895,104 @@ public class Graph {
      * @param toTheLeft       The new group will be placed to the left of fulcrum group
      */
     private void findDescendants(Node commonNode, int startGeneration, int maxGenerations, boolean toTheLeft) {
+        runSteps(descendantStep(commonNode, startGeneration, maxGenerations, toTheLeft));
+    }
+
+    private Step descendantStep(final Node commonNode, final int startGeneration, final int maxGenerations, final boolean toTheLeft) {
+        return new Step() {
+            @Override
+            void run(List<Step> next) {
+                findChildren(commonNode, startGeneration, maxGenerations, toTheLeft, next);
+            }
+        };
+    }
+
+    /**
+     * One generation of findDescendants(): the children of commonNode.
+     * Each regular child is left to a next step, that finds its descendants before the following child.
+     */
+    private void findChildren(final Node commonNode, final int startGeneration, final int maxGenerations, boolean toTheLeft,
+                              List<Step> next) {
         if (!commonNode.isDuplicate()) {
             // Finds children of commonNode
             List<Person> children = new ArrayList<>();
             if (commonNode.spouseFamily != null) {
-                children.addAll(commonNode.spouseFamily.getChildren(gedcom));
+                addChildren(index.getId(commonNode.spouseFamily), children);
             } else {
-                for (Family family : ((PersonNode)commonNode).person.getSpouseFamilies(gedcom))
-                    children.addAll(family.getChildren(gedcom));
+                int personId = ((PersonNode)commonNode).personId;
+                for (int i = 0; i < index.getSpouseFamilyCount(personId); i++)
+                    addChildren(index.getSpouseFamily(personId, i), children);
             }
             // Creates descent
             if (!children.isEmpty()) {
-                int childGeneration = commonNode.generation + 1;
-                boolean childMini = childGeneration >= maxGenerations + startGeneration;
+                final int childGeneration = commonNode.generation + 1;
+                boolean lastGeneration = childGeneration >= maxGenerations + startGeneration;
+                boolean childMini = lastGeneration && !isExpanded(children);
                 if (childMini && !withNumbers)
                     return;
                 if (!childMini && childGeneration > maxBelow)
                     maxBelow = childGeneration;
-                Group childGroup = createGroup(childGeneration, childMini, Branch.NONE, toTheLeft);
-                for (Person child : children) {
-                    if (child != null) {
-                        Genus childGenus = findPersonGenus(child, commonNode, childGeneration, childMini ? Card.PROGENY : Card.REGULAR, childGroup);
-                        if (childGenus != null && !childMini) {
+                final Group childGroup = createGroup(childGeneration, childMini, Branch.NONE, toTheLeft);
+                for (final Person child : children) {
+                    if (childMini || lastGeneration && !expandedProgenies.contains(child)) {
+                        // Mini progeny, also beside an expanded sibling in a regular group
+                        if (withNumbers)
+                            findPersonGenus(child, commonNode, childGeneration, Card.PROGENY, childGroup);
+                        continue;
+                    }
+                    next.add(new Step() {
+                        @Override
+                        void run(List<Step> next) {
+                            Genus childGenus = findPersonGenus(child, commonNode, childGeneration, Card.REGULAR, childGroup);
                             for (Node childNode : childGenus) {
-                                findDescendants(childNode, startGeneration, maxGenerations, false);
+                                next.add(descendantStep(childNode, startGeneration, maxGenerations, false));
                             }
                         }
-                    }
+                    });
                 }
             }
         }
     }
 
+    /**
+     * Part of a search of relatives, run by runSteps() in place of a recursive call,
+     * so that the number of generations is not limited by the thread stack.
+     */
+    private abstract static class Step {
+        /**
+         * @param next Where to add the following steps, that will run in the same order, before the other pending steps
+         */
+        abstract void run(List<Step> next);
+    }
+
+    /**
+     * Runs the step and then the steps it adds, depth first, in the same order of a recursion.
+     */
+    private static void runSteps(Step first) {
+        List<Step> pending = new ArrayList<>();
+        List<Step> next = new ArrayList<>();
+        pending.add(first);
+        while (!pending.isEmpty()) {
+            pending.remove(pending.size() - 1).run(next);
+            for (int i = next.size() - 1; i >= 0; i--)
+                pending.add(next.get(i));
+            next.clear();
+        }
+    }
+
+    /**
+     * @return True if expand() has been called on the mini progeny of one of the children, whose group becomes regular
+     */
+    private boolean isExpanded(List<Person> children) {
+        if (!expandedProgenies.isEmpty()) {
+            for (Person child : children) {
+                if (expandedProgenies.contains(child))
+                    return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Finds one or multiple marriages of a person. Used for fulcrum, their siblings (regular and half), descendants, uncles.
      */
@@ -488,25 +1000,26 @@ public class Graph {
         Genus genus = new Genus();
         if (group != null && group.contains(person))
             return genus;
-        List<Family> families = person.getSpouseFamilies(gedcom);
-        if (families.isEmpty() || !withSpouses || type == Card.PROGENY) {
+        int personId = index.getId(person);
+        int families = index.getSpouseFamilyCount(personId);
+        if (families == 0 || !withSpouses || type == Card.PROGENY) {
             Node singleNode = createNodeFromPerson(person, null, parentNode, generation, type, Match.MAIN);
             if (group != null)
                 group.addNode(singleNode);
             genus.add(singleNode);
         } else {
             // Partners position respect the person (male LEFT, female RIGHT)
-            Side side = Gender.isFemale(person) ? Side.RIGHT : Side.LEFT;
+            Side side = attributes.getGender(personId) == Gender.FEMALE ? Side.RIGHT : Side.LEFT;
             boolean straight = true; // Person inside the MAIN family is gay in the "wrong" spouse role
-            if (families.size() > 1) {
-                if (side == Side.LEFT && getSpouses(families.get(families.size() - 1), null).indexOf(person) == 1 // Male in the last family
-                        || side == Side.RIGHT && getSpouses(families.get(0), null).indexOf(person) == 0) { // Female in the first family
+            if (families > 1) {
+                if (side == Side.LEFT && indexOfSpouse(index.getSpouseFamily(personId, families - 1), personId) == 1 // Male in the last family
+                        || side == Side.RIGHT && indexOfSpouse(index.getSpouseFamily(personId, 0), personId) == 0) { // Female in the first family
                     straight = false;
                 }
             }
-            for (int i = 0; i < families.size(); i++) {
-                Family family = families.get(i);
-                Match match = Match.get(families.size(), i, side, straight);
+            for (int i = 0; i < families; i++) {
+                Family family = index.getFamily(index.getSpouseFamily(personId, i));
+                Match match = Match.get(families, i, side, straight);
                 Node partnerNode;
                 if (match == Match.MAIN) { // First or unique marriage, or lonely person
                     partnerNode = createNodeFromPerson(person, family, parentNode, generation, type, match);
@@ -525,9 +1038,9 @@ public class Graph {
     void findAcquiredAncestry(PersonNode card) {
         card.acquired = true;
         if (withNumbers) {
-            List<Family> parentFamilies = card.person.getParentFamilies(gedcom);
-            if (!parentFamilies.isEmpty()) {
-                Family family = parentFamilies.get(parentFamilies.size() - 1);
+            int familyId = index.getLastParentFamily(card.personId);
+            if (familyId >= 0) {
+                Family family = index.getFamily(familyId);
                 Node ancestry = createNodeFromFamily(family, card.generation - 1, Card.ANCESTRY);
                 card.origin = ancestry;
                 if (ancestry.getHusband() != null)
@@ -546,7 +1059,7 @@ public class Graph {
     }
 
     Group createGroup(int generation, boolean mini, Branch branch, boolean beforeFulcrumGroup) {
-        Group group = new Group(generation, mini, branch);
+        Group group = new Group(generation, mini, branch, config);
         // Add it to groups list
         if (beforeFulcrumGroup) { // Group of paternal cousins
             int index = animator.groups.indexOf(fulcrumGroup);
@@ -556,6 +1069,29 @@ public class Graph {
         return group;
     }
 
+    /**
+     * Creates a new PersonNode, or takes one with the same person and type from the previous diagram while re-centering.
+     */
+    private PersonNode createPersonNode(Person person, Card type) {
+        if (reusableNodes != null) {
+            List<PersonNode> nodes = reusableNodes.get(person);
+            if (nodes != null) {
+                for (int i = 0; i < nodes.size(); i++) {
+                    PersonNode personNode = nodes.get(i);
+                    if (personNode.type == type) {
+                        nodes.remove(i);
+                        personNode.reset(index, config);
+                        return personNode;
+                    }
+                }
+            }
+            PersonNode personNode = new PersonNode(index, person, type, config);
+            newPersonNodes.add(personNode);
+            return personNode;
+        }
+        return new PersonNode(index, person, type, config);
+    }
+
     /**
      * Creates a PersonNode starting from a person. Possibly creates the FamilyNode and returns it.
      *
@@ -567,7 +1103,7 @@ public class Graph {
      */
     private Node createNodeFromPerson(Person person, Family spouseFamily, Node parentNode, int generation, Card type, Match match) {
         // Single person
-        PersonNode personNode = new PersonNode(gedcom, person, type);
+        PersonNode personNode = createPersonNode(person, type);
         personNode.generation = generation;
         personNode.origin = parentNode;
         personNode.match = match;
@@ -575,26 +1111,27 @@ public class Graph {
         // Possible family with at least two members
         FamilyNode familyNode = null;
         if ((type == Card.FULCRUM || type == Card.REGULAR) && spouseFamily != null && !personNode.duplicate) {
-            List<Person> spouses = getSpouses(spouseFamily, null);
-            if (spouses.size() > 1 && withSpouses) { // Many spouses
-                familyNode = new FamilyNode(spouseFamily, false, Side.NONE, leftToRight);
+            int familyId = index.getId(spouseFamily);
+            if (getSpouse(familyId, -1, 1) >= 0 && withSpouses) { // Many spouses
+                familyNode = new FamilyNode(spouseFamily, false, Side.NONE, leftToRight, config);
                 familyNode.generation = generation;
                 familyNode.match = match;
-                for (Person spouse : spouses) {
+                for (int i = 0; i < 2; i++) {
+                    Person spouse = index.getPerson(getSpouse(familyId, -1, i));
                     if (spouse.equals(person) && !familyNode.partners.contains(personNode)) {
                         familyNode.addPartner(personNode);
                     } else {
-                        PersonNode partnerNode = new PersonNode(gedcom, spouse, Card.REGULAR);
+                        PersonNode partnerNode = createPersonNode(spouse, Card.REGULAR);
                         partnerNode.generation = generation;
                         familyNode.addPartner(partnerNode);
-                        if (parentNode != null && spouse.getParentFamilies(gedcom).contains(parentNode.spouseFamily)) // They are married siblings
+                        if (parentNode != null && isChild(spouse, parentNode.spouseFamily)) // They are married siblings
                             partnerNode.origin = parentNode;
                         else
                             findAcquiredAncestry(partnerNode);
                         checkForDuplicate(partnerNode, spouseFamily);
                     }
                 }
-                familyNode.createBond();
+                familyNode.createBond(attributes.getMarriageDate(index.getId(spouseFamily)));
             } else { // One spouse only
                 personNode.spouseFamily = spouseFamily;
             }
@@ -617,19 +1154,19 @@ public class Graph {
      * @return A PersonNode or a FamilyNode
      */
     private FamilyNode createNodeFromFamily(Family spouseFamily, int generation, Card type) {
-        FamilyNode newNode = new FamilyNode(spouseFamily, type == Card.ANCESTRY, Side.NONE, leftToRight);
+        FamilyNode newNode = new FamilyNode(spouseFamily, type == Card.ANCESTRY, Side.NONE, leftToRight, config);
         newNode.generation = generation;
         if (type == Card.REGULAR || withNumbers) {
             newNode.match = Match.MAIN;
-            List<Person> spouses = getSpouses(spouseFamily, null);
-            for (Person spouse : spouses) {
-                PersonNode personNode = new PersonNode(gedcom, spouse, type);
+            int familyId = index.getId(spouseFamily);
+            for (int i = 0; i < 2 && getSpouse(familyId, -1, i) >= 0; i++) {
+                PersonNode personNode = createPersonNode(index.getPerson(getSpouse(familyId, -1, i)), type);
                 personNode.generation = generation;
                 checkForDuplicate(personNode, spouseFamily);
                 newNode.addPartner(personNode);
             }
         }
-        newNode.createBond();
+        newNode.createBond(attributes.getMarriageDate(index.getId(spouseFamily)));
         animator.addNode(newNode);
         return newNode;
     }
@@ -641,23 +1178,23 @@ public class Graph {
      * @param parentNode Useful to check if the created personNode is a married sibling
      */
     private FamilyNode createNextFamilyNode(Family spouseFamily, Person excluded, int generation, Side side, Match match, Node parentNode) {
-        FamilyNode familyNode = new FamilyNode(spouseFamily, false, side, leftToRight);
+        FamilyNode familyNode = new FamilyNode(spouseFamily, false, side, leftToRight, config);
         familyNode.generation = generation;
         familyNode.match = match;
-        if (withSpouses) {
-            for (Person partner : getSpouses(spouseFamily, excluded)) {
-                PersonNode personNode = new PersonNode(gedcom, partner, Card.REGULAR);
-                personNode.generation = generation;
-                if (parentNode != null && partner.getParentFamilies(gedcom).contains(parentNode.spouseFamily)) { // They are married siblings
-                    personNode.origin = parentNode;
-                } else {
-                    findAcquiredAncestry(personNode);
-                }
-                familyNode.addPartner(personNode);
-                checkForDuplicate(personNode, spouseFamily);
+        int partnerId = withSpouses ? getSpouse(index.getId(spouseFamily), index.getId(excluded), 0) : -1;
+        if (partnerId >= 0) {
+            Person partner = index.getPerson(partnerId);
+            PersonNode personNode = createPersonNode(partner, Card.REGULAR);
+            personNode.generation = generation;
+            if (parentNode != null && isChild(partner, parentNode.spouseFamily)) { // They are married siblings
+                personNode.origin = parentNode;
+            } else {
+                findAcquiredAncestry(personNode);
             }
+            familyNode.addPartner(personNode);
+            checkForDuplicate(personNode, spouseFamily);
         }
-        familyNode.createBond();
+        familyNode.createBond(attributes.getMarriageDate(index.getId(spouseFamily)));
         animator.addNode(familyNode);
         return familyNode;
     }
@@ -668,18 +1205,28 @@ public class Graph {
      * @param spouseFamily Family in which the person is spouse
      */
     private void checkForDuplicate(PersonNode newPersonNode, Family spouseFamily) {
-        for (PersonNode oldPersonNode : animator.personNodes) {
-            if (!newPersonNode.mini && !oldPersonNode.mini) {
-                if (oldPersonNode.person.equals(newPersonNode.person)) {
-                    if (spouseFamily == null || oldPersonNode.familyNode == null || oldPersonNode.familyNode.spouseFamily.equals(spouseFamily)) {
+        if (newPersonNode.mini)
+            return;
+        // Same person already in the diagram
+        List<PersonNode> samePersons = animator.personIndex.get(newPersonNode.person);
+        if (samePersons != null) {
+            for (PersonNode oldPersonNode : samePersons) {
+                if (spouseFamily == null || oldPersonNode.familyNode == null || oldPersonNode.familyNode.spouseFamily.equals(spouseFamily)) {
+                    newPersonNode.duplicate = true;
+                }
+                if (withDuplicateLines)
+                    animator.duplicateLines.add(new DuplicateLine(oldPersonNode, newPersonNode, attributes.getGender(oldPersonNode.personId)));
+            }
+        }
+        // Specific for next marriages: another person in the same family and generation
+        if (spouseFamily != null && !newPersonNode.duplicate) {
+            List<PersonNode> sameFamily = animator.spouseIndex.get(spouseFamily);
+            if (sameFamily != null) {
+                for (PersonNode oldPersonNode : sameFamily) {
+                    if (oldPersonNode.generation == newPersonNode.generation && !oldPersonNode.person.equals(newPersonNode.person)) {
                         newPersonNode.duplicate = true;
+                        break;
                     }
-                    if (withDuplicateLines)
-                        animator.duplicateLines.add(new DuplicateLine(oldPersonNode, newPersonNode));
-                } else if (oldPersonNode.generation == newPersonNode.generation && oldPersonNode.familyNode != null
-                        && oldPersonNode.familyNode.spouseFamily.equals(spouseFamily)) {
-                    // Specific for next marriages
-                    newPersonNode.duplicate = true;
                 }
             }
         }
@@ -690,42 +1237,62 @@ public class Graph {
      */
     private boolean areSiblings(PersonNode first, PersonNode second) {
         if (first != null && second != null) {
-            List<Family> firstFamilies = first.person.getParentFamilies(gedcom);
-            List<Family> secondFamilies = second.person.getParentFamilies(gedcom);
-            return !firstFamilies.isEmpty() && !secondFamilies.isEmpty()
-                    && firstFamilies.get(firstFamilies.size() - 1).equals(secondFamilies.get(secondFamilies.size() - 1));
+            int firstFamily = index.getLastParentFamily(first.personId);
+            return firstFamily >= 0 && firstFamily == index.getLastParentFamily(second.personId);
         }
         return false;
     }
 
     /**
-     * @param excluded When provided, maximum one person is returned
-     * @return The first one or two husbands and wives of a family, or an empty list
-     */
-    List<Person> getSpouses(Family family, Person excluded) {
-        // Adds spouses
-        List<Person> spouses = new ArrayList<>();
-        if (!family.getHusbandRefs().isEmpty())
-            spouses.add(family.getHusbandRefs().get(0).getPerson(gedcom));
-        if (!family.getWifeRefs().isEmpty())
-            spouses.add(family.getWifeRefs().get(0).getPerson(gedcom));
-        for (int i = 1; i < family.getHusbandRefs().size(); i++)
-            spouses.add(family.getHusbandRefs().get(i).getPerson(gedcom));
-        for (int i = 1; i < family.getWifeRefs().size(); i++)
-            spouses.add(family.getWifeRefs().get(i).getPerson(gedcom));
-        // Removes null and excluded
-        Iterator<Person> iterator = spouses.iterator();
-        while (iterator.hasNext()) {
-            Person person = iterator.next();
-            if (person == null || person.equals(excluded))
-                iterator.remove();
-        }
-        if (spouses.size() > 2)
-            spouses = spouses.subList(0, 2); // Only two persons
-        if (excluded != null && spouses.size() == 2) {
-            spouses = spouses.subList(0, 1); // Only one person
-        }
-        return spouses;
+     * The person is child of the family.
+     */
+    private boolean isChild(Person person, Family family) {
+        return family != null && index.isChild(index.getId(person), index.getId(family));
+    }
+
+    /**
+     * Adds to the list the children of a family.
+     */
+    private void addChildren(int familyId, List<Person> children) {
+        for (int i = 0; i < index.getChildCount(familyId); i++)
+            children.add(index.getPerson(index.getChild(familyId, i)));
+    }
+
+    /**
+     * @return Position of the person among the spouses of the family, or -1
+     */
+    private int indexOfSpouse(int familyId, int personId) {
+        for (int i = 0; i < 2; i++) {
+            if (getSpouse(familyId, -1, i) == personId)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Takes the first husband, the first wife, then the other husbands and wives, skipping missing persons and the excluded one.
+     * Only the first two spouses are displayed, so callers ask for position 0 and 1 without collecting them in a list.
+     *
+     * @param position 0 for the first spouse, 1 for the second
+     * @return ID of the spouse at the position, or -1 if the family doesn't have so many spouses
+     */
+    private int getSpouse(int familyId, int excludedId, int position) {
+        int husbands = index.getHusbandCount(familyId);
+        int wives = index.getWifeCount(familyId);
+        for (int i = 0; i < husbands + wives; i++) { // Position in the order first husband, first wife, other husbands, other wives
+            int spouseId;
+            if (i == 0)
+                spouseId = husbands > 0 ? index.getHusband(familyId, 0) : index.getWife(familyId, 0);
+            else if (i == 1 && husbands > 0 && wives > 0)
+                spouseId = index.getWife(familyId, 0);
+            else if (i < husbands + (wives > 0 ? 1 : 0))
+                spouseId = index.getHusband(familyId, i - (wives > 0 ? 1 : 0));
+            else
+                spouseId = index.getWife(familyId, i - husbands);
+            if (spouseId >= 0 && spouseId != excludedId && position-- == 0)
+                return spouseId;
+        }
+        return -1;
     }
 
     @Override
@@ -19,9 +19,11 @@ public class Group extends Metric {
     int generation;
     boolean mini;
     Branch branch;
+    LayoutConfig config;
 
-    Group(int generation, boolean mini, Branch branch) {
+    Group(int generation, boolean mini, Branch branch, LayoutConfig config) {
         list = new ArrayList<>();
+        this.config = config;
         this.generation = generation;
         this.mini = mini;
         this.branch = branch;
@@ -132,9 +134,10 @@ public class Group extends Metric {
      */
     public void placeNodes(float centerX) {
         float posX = centerX - getBasicLeftWidth() - getBasicCentralWidth() / 2;
-        for (Node child : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Node child = list.get(i);
             child.setX(posX);
-            posX += child.width + HORIZONTAL_SPACE;
+            posX += child.width + config.horizontalSpace;
         }
     }
 
@@ -150,15 +153,15 @@ public class Group extends Metric {
                 float posX = origin.x;
                 for (int i = union.list.indexOf(origin) - 1; i >= 0; i--) {
                     Node node = union.list.get(i);
-                    posX -= node.width + HORIZONTAL_SPACE;
+                    posX -= node.width + config.horizontalSpace;
                     node.setX(posX);
                 }
                 // Place maternal uncles
-                posX = origin.x + origin.width + HORIZONTAL_SPACE;
+                posX = origin.x + origin.width + config.horizontalSpace;
                 for (int i = union.list.indexOf(origin) + 1; i < union.list.size(); i++) {
                     Node node = union.list.get(i);
                     node.setX(posX);
-                    posX += node.width + HORIZONTAL_SPACE;
+                    posX += node.width + config.horizontalSpace;
                 }
             }
         }
@@ -175,15 +178,25 @@ public class Group extends Metric {
      * Places mini origin or regular origin without partners. Different distance whether this group has one node or multiple nodes.
      */
     void placeOriginY() {
-        origin.setY(y - (first.equals(last) ? ANCESTRY_DISTANCE : LITTLE_GROUP_DISTANCE_CALC) - origin.height);
+        origin.setY(y - (first.equals(last) ? config.ancestryDistance : config.littleGroupDistance) - origin.height);
     }
 
+    /**
+     * Shifts horizontally this group and the regular groups of descendants.
+     */
     void moveDescending(float shift) {
-        if (!mini) {
-            updateX();
-            setX(x + shift);
-            for (Node node : list) {
-                if (node.youth != null) node.youth.moveDescending(shift);
+        MetricStack stack = MetricStack.get();
+        int base = stack.size();
+        stack.push(this);
+        while (stack.size() > base) {
+            Group group = (Group)stack.pop();
+            if (!group.mini) {
+                group.updateX();
+                group.setX(group.x + shift);
+                for (int i = group.list.size() - 1; i >= 0; i--) {
+                    Node node = group.list.get(i);
+                    if (node.youth != null) stack.push(node.youth);
+                }
             }
         }
     }
@@ -202,7 +215,8 @@ public class Group extends Metric {
     @Override
     void setX(float x) {
         float diff = x - this.x;
-        for (Node node : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Node node = list.get(i);
             node.setX(node.x + diff);
         }
         this.x = x;
@@ -210,8 +224,8 @@ public class Group extends Metric {
 
     @Override
     void setY(float y) {
-        for (Node node : list) {
-            node.setY(y);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).setY(y);
         }
         this.y = y;
     }
@@ -232,12 +246,13 @@ public class Group extends Metric {
      */
     private float getBasicLeftWidth() {
         float width = 0;
-        for (Node node : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Node node = list.get(i);
             if (node.getPersonNodes().contains(first)) {
                 width += node.getLeftWidth(branch);
                 break;
             } else {
-                width += node.width + HORIZONTAL_SPACE;
+                width += node.width + config.horizontalSpace;
             }
         }
         return width;
@@ -252,7 +267,7 @@ public class Group extends Metric {
             Node start = first.getFamilyNode();
             Node end = last.getFamilyNode();
             for (int i = list.indexOf(start); i < list.indexOf(end); i++) {
-                width += list.get(i).width + HORIZONTAL_SPACE;
+                width += list.get(i).width + config.horizontalSpace;
             }
             width = width - start.getLeftWidth(branch) + end.getLeftWidth(branch);
         }
@@ -261,8 +276,8 @@ public class Group extends Metric {
 
     float getHeight() {
         height = 0;
-        for (Node node : list)
-            height = Math.max(height, node.height);
+        for (int i = 0; i < list.size(); i++)
+            height = Math.max(height, list.get(i).height);
         return height;
     }
 
@@ -14,8 +14,8 @@ class GroupRow extends ArrayList<Group> {
      * Place nodes of this ancestor row.
      */
     void placeAncestors() {
-        for (Group group : this) {
-            group.placeAncestors();
+        for (int i = 0; i < size(); i++) {
+            get(i).placeAncestors();
         }
     }
 
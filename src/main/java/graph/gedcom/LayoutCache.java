@@ -0,0 +1,137 @@
+package graph.gedcom;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Placements of the last diagrams, so that going back to a recent fulcrum doesn't need a new layout.
+ * Each placement is stored with the fulcrum, the family choice, the settings of the graph, the mini cards expanded
+ * and the card sizes: if any of them changes, the diagram is placed again.
+ * The least recently used placement is evicted when the cache is full.
+ * Enabled by Graph.setLayoutCache(), and cleared when the Gedcom changes.
+ */
+public class LayoutCache {
+
+    private final int maxEntries;
+    private final boolean softReferences;
+    private final Map<Key, Object> entries; // Each value is a placement, or a soft reference to it
+    private int hits, misses;
+
+    /**
+     * @param maxEntries     Max number of placements to keep
+     * @param softReferences True to let the garbage collector release the placements when memory is low
+     */
+    public LayoutCache(final int maxEntries, boolean softReferences) {
+        this.maxEntries = maxEntries;
+        this.softReferences = softReferences;
+        entries = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return The placement stored with the key, or null
+     */
+    float[] get(Key key) {
+        Object value = entries.get(key);
+        if (value instanceof SoftReference) {
+            value = ((SoftReference<?>)value).get();
+            if (value == null) // Released by the garbage collector
+                entries.remove(key);
+        }
+        if (value == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (float[])value;
+    }
+
+    void put(Key key, float[] placement) {
+        entries.put(key, softReferences ? new SoftReference<>(placement) : placement);
+    }
+
+    /**
+     * Removes all the placements, keeping the counters.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return Number of placements stored, including the ones maybe released by the garbage collector
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutCache " + entries.size() + "/" + maxEntries + ", hits " + hits + ", misses " + misses;
+    }
+
+    /**
+     * Identifies a diagram: fulcrum, settings, expanded mini cards and card sizes.
+     */
+    static final class Key {
+        final String fulcrumId;
+        final int[] settings; // Family choice, generations and boolean options of the graph
+        final String[] expandedAncestries; // Sorted IDs of the families with the ancestry expanded
+        final String[] expandedProgenies; // Sorted IDs of the persons with the progeny expanded
+        final LayoutConfig config;
+        final float[] sizes; // Width and height of each person node
+        final int hash;
+
+        Key(String fulcrumId, int[] settings, String[] expandedAncestries, String[] expandedProgenies, LayoutConfig config,
+            float[] sizes) {
+            this.fulcrumId = fulcrumId;
+            this.settings = settings;
+            this.expandedAncestries = expandedAncestries;
+            this.expandedProgenies = expandedProgenies;
+            this.config = config;
+            this.sizes = sizes;
+            int hash = fulcrumId.hashCode();
+            hash = 31 * hash + Arrays.hashCode(settings);
+            hash = 31 * hash + Arrays.hashCode(expandedAncestries);
+            hash = 31 * hash + Arrays.hashCode(expandedProgenies);
+            hash = 31 * hash + config.hashCode();
+            hash = 31 * hash + Arrays.hashCode(sizes);
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object)
+                return true;
+            if (!(object instanceof Key))
+                return false;
+            Key key = (Key)object;
+            return hash == key.hash && fulcrumId.equals(key.fulcrumId) && Arrays.equals(settings, key.settings)
+                    && Arrays.equals(expandedAncestries, key.expandedAncestries)
+                    && Arrays.equals(expandedProgenies, key.expandedProgenies) && config.equals(key.config)
+                    && Arrays.equals(sizes, key.sizes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package graph.gedcom;
+
+import java.util.Arrays;
+
+/**
+ * Spaces and distances used to lay out the diagram, in dip.
+ * Being immutable, the same configuration can be shared by many graphs working in different threads.
+ * The default values are the corresponding fields of Util at the moment the builder is created.
+ */
+public final class LayoutConfig {
+
+    final int verticalSpace; // Vertical space between rows of nodes
+    final int horizontalSpace; // Horizontal space between nodes of the same group
+    final int unionDistance; // Horizontal space between unions of the same row
+    final int bondWidth; // Horizontal distance between partners with no marriage oval
+    final int miniBondWidth; // Horizontal space between ancestry husband and wife
+    final int marriageWidth; // Width of the marriage year oval (overlaps included)
+    final int marriageInnerWidth;
+    final int littleGroupDistance; // Vertical space below family node without partners or below mini ancestry, both with many children
+    final int ancestryDistance; // Vertical space between mini ancestry and person node
+    final int progenyDistance; // Vertical space between family node and mini progeny
+    final int progenyPlay; // Horizontal space between progeny mini cards
+
+    private LayoutConfig(Builder builder) {
+        verticalSpace = builder.verticalSpace;
+        horizontalSpace = builder.horizontalSpace;
+        unionDistance = builder.unionDistance;
+        bondWidth = builder.bondWidth;
+        miniBondWidth = builder.miniBondWidth;
+        marriageWidth = builder.marriageWidth;
+        marriageInnerWidth = builder.marriageInnerWidth;
+        littleGroupDistance = builder.littleGroupDistance;
+        ancestryDistance = builder.ancestryDistance;
+        progenyDistance = builder.progenyDistance;
+        progenyPlay = builder.progenyPlay;
+    }
+
+    /**
+     * @return A builder initialized with the values of this configuration
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * @return The configuration applied to a diagram without ancestor and descendant numbers, where rows are closer
+     */
+    LayoutConfig forNumbers(boolean withNumbers) {
+        if (withNumbers)
+            return this;
+        return toBuilder().verticalSpace(verticalSpace / 2).littleGroupDistance(littleGroupDistance / 2).build();
+    }
+
+    public int getVerticalSpace() {
+        return verticalSpace;
+    }
+
+    public int getHorizontalSpace() {
+        return horizontalSpace;
+    }
+
+    public int getUnionDistance() {
+        return unionDistance;
+    }
+
+    public int getBondWidth() {
+        return bondWidth;
+    }
+
+    public int getMiniBondWidth() {
+        return miniBondWidth;
+    }
+
+    public int getMarriageWidth() {
+        return marriageWidth;
+    }
+
+    public int getMarriageInnerWidth() {
+        return marriageInnerWidth;
+    }
+
+    public int getLittleGroupDistance() {
+        return littleGroupDistance;
+    }
+
+    public int getAncestryDistance() {
+        return ancestryDistance;
+    }
+
+    public int getProgenyDistance() {
+        return progenyDistance;
+    }
+
+    public int getProgenyPlay() {
+        return progenyPlay;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object)
+            return true;
+        if (!(object instanceof LayoutConfig))
+            return false;
+        LayoutConfig config = (LayoutConfig)object;
+        return verticalSpace == config.verticalSpace && horizontalSpace == config.horizontalSpace
+                && unionDistance == config.unionDistance && bondWidth == config.bondWidth && miniBondWidth == config.miniBondWidth
+                && marriageWidth == config.marriageWidth && marriageInnerWidth == config.marriageInnerWidth
+                && littleGroupDistance == config.littleGroupDistance && ancestryDistance == config.ancestryDistance
+                && progenyDistance == config.progenyDistance && progenyPlay == config.progenyPlay;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new int[]{verticalSpace, horizontalSpace, unionDistance, bondWidth, miniBondWidth, marriageWidth,
+                marriageInnerWidth, littleGroupDistance, ancestryDistance, progenyDistance, progenyPlay});
+    }
+
+    public static class Builder {
+        private int verticalSpace = Util.VERTICAL_SPACE;
+        private int horizontalSpace = Util.HORIZONTAL_SPACE;
+        private int unionDistance = Util.UNION_DISTANCE;
+        private int bondWidth = Util.BOND_WIDTH;
+        private int miniBondWidth = Util.MINI_BOND_WIDTH;
+        private int marriageWidth = Util.MARRIAGE_WIDTH;
+        private int marriageInnerWidth = Util.MARRIAGE_INNER_WIDTH;
+        private int littleGroupDistance = Util.LITTLE_GROUP_DISTANCE;
+        private int ancestryDistance = Util.ANCESTRY_DISTANCE;
+        private int progenyDistance = Util.PROGENY_DISTANCE;
+        private int progenyPlay = Util.PROGENY_PLAY;
+
+        public Builder() {
+        }
+
+        private Builder(LayoutConfig config) {
+            verticalSpace = config.verticalSpace;
+            horizontalSpace = config.horizontalSpace;
+            unionDistance = config.unionDistance;
+            bondWidth = config.bondWidth;
+            miniBondWidth = config.miniBondWidth;
+            marriageWidth = config.marriageWidth;
+            marriageInnerWidth = config.marriageInnerWidth;
+            littleGroupDistance = config.littleGroupDistance;
+            ancestryDistance = config.ancestryDistance;
+            progenyDistance = config.progenyDistance;
+            progenyPlay = config.progenyPlay;
+        }
+
+        public Builder verticalSpace(int space) {
+            verticalSpace = space;
+            return this;
+        }
+
+        public Builder horizontalSpace(int space) {
+            horizontalSpace = space;
+            return this;
+        }
+
+        public Builder unionDistance(int distance) {
+            unionDistance = distance;
+            return this;
+        }
+
+        public Builder bondWidth(int width) {
+            bondWidth = width;
+            return this;
+        }
+
+        public Builder miniBondWidth(int width) {
+            miniBondWidth = width;
+            return this;
+        }
+
+        public Builder marriageWidth(int width) {
+            marriageWidth = width;
+            return this;
+        }
+
+        public Builder marriageInnerWidth(int width) {
+            marriageInnerWidth = width;
+            return this;
+        }
+
+        public Builder littleGroupDistance(int distance) {
+            littleGroupDistance = distance;
+            return this;
+        }
+
+        public Builder ancestryDistance(int distance) {
+            ancestryDistance = distance;
+            return this;
+        }
+
+        public Builder progenyDistance(int distance) {
+            progenyDistance = distance;
+            return this;
+        }
+
+        public Builder progenyPlay(int play) {
+            progenyPlay = play;
+            return this;
+        }
+
+        public LayoutConfig build() {
+            return new LayoutConfig(this);
+        }
+    }
+}
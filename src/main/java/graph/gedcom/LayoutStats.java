@@ -0,0 +1,186 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Card;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures of the last diagram created by a Graph, to find out why some diagrams take longer than others.
+ * Collected only if enabled with Graph.collectLayoutStats(), each phase overwrites its own values.
+ */
+public class LayoutStats {
+
+    /**
+     * The measured phases of the diagram creation.
+     */
+    public enum Phase {
+        START_FROM, INIT_NODES, PLACE_NODES, PLACE_RESIZED_NODES
+    }
+
+    private static final Object threadBean; // ThreadMXBean of the JVM, null where not available (e.g. on Android)
+    private static final Method allocatedBytes; // ThreadMXBean.getThreadAllocatedBytes(long)
+
+    static {
+        Object bean = null;
+        Method method = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            if ((Long)method.invoke(bean, Thread.currentThread().getId()) < 0) // Allocation counter disabled
+                method = null;
+        } catch (Throwable e) {
+            method = null;
+        }
+        threadBean = method != null ? bean : null;
+        allocatedBytes = method;
+    }
+
+    private final long[] nanos = new long[Phase.values().length];
+    private final long[] bytes = new long[Phase.values().length];
+    private long startNanos, startBytes; // At the beginning of the actual phase
+    private final int[] cards = new int[Card.values().length]; // Person nodes by card type
+    private int nodes, duplicates, bonds, lines, backLines, duplicateLines, tiles;
+    private int iterations, slideDepth;
+    private float residual;
+
+    LayoutStats() {
+        Arrays.fill(bytes, -1);
+    }
+
+    void begin() {
+        startBytes = getAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stores the duration of the phase begun with begin() and the counts of the diagram at the end of the phase.
+     */
+    void end(Phase phase, Animator animator) {
+        nanos[phase.ordinal()] = System.nanoTime() - startNanos;
+        bytes[phase.ordinal()] = startBytes < 0 ? -1 : getAllocatedBytes() - startBytes;
+        Arrays.fill(cards, 0);
+        duplicates = 0;
+        for (PersonNode personNode : animator.personNodes) {
+            cards[personNode.type.ordinal()]++;
+            if (personNode.duplicate)
+                duplicates++;
+        }
+        nodes = animator.nodes.size();
+        bonds = animator.bonds.size();
+        lines = animator.lines.size();
+        backLines = animator.backLines.size();
+        duplicateLines = animator.duplicateLines.size();
+        tiles = animator.lineGroups.size() + animator.backLineGroups.size();
+        iterations = animator.iterations;
+        residual = animator.residual;
+        slideDepth = animator.slideDepth;
+    }
+
+    private static long getAllocatedBytes() {
+        if (allocatedBytes == null)
+            return -1;
+        try {
+            return (Long)allocatedBytes.invoke(threadBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return Wall time of the last execution of the phase, in nanoseconds
+     */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * @return Bytes allocated by the calling thread during the last execution of the phase, or -1 if the JVM can't tell
+     */
+    public long getAllocatedBytes(Phase phase) {
+        return bytes[phase.ordinal()];
+    }
+
+    /**
+     * @return Number of person nodes with the card type, mini cards included
+     */
+    public int getPersonNodeCount(Card type) {
+        return cards[type.ordinal()];
+    }
+
+    /**
+     * @return Number of person and family nodes
+     */
+    public int getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * @return Number of person nodes of persons already displayed elsewhere in the diagram
+     */
+    public int getDuplicateCount() {
+        return duplicates;
+    }
+
+    public int getBondCount() {
+        return bonds;
+    }
+
+    public int getLineCount() {
+        return lines;
+    }
+
+    public int getBackLineCount() {
+        return backLines;
+    }
+
+    public int getDuplicateLineCount() {
+        return duplicateLines;
+    }
+
+    /**
+     * @return Number of groups of lines produced by the distribution of lines and back lines
+     */
+    public int getTileCount() {
+        return tiles;
+    }
+
+    /**
+     * @return Iterations of the horizontal force loop, see Graph.getLayoutIterations()
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return Max node shift in the last iteration of the force loop, see Graph.getLayoutResidual()
+     */
+    public float getResidual() {
+        return residual;
+    }
+
+    /**
+     * @return Max number of nodes pushed one by the other by a single overlap correction
+     */
+    public int getSlideDepth() {
+        return slideDepth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            builder.append(phase).append(": ").append(nanos[phase.ordinal()] / 1000).append(" us ")
+                    .append(bytes[phase.ordinal()]).append(" bytes, ");
+        }
+        for (Card type : Card.values())
+            builder.append(type).append(": ").append(cards[type.ordinal()]).append(", ");
+        builder.append("nodes: ").append(nodes).append(", duplicates: ").append(duplicates)
+                .append(", bonds: ").append(bonds).append(", lines: ").append(lines).append(", back lines: ").append(backLines)
+                .append(", duplicate lines: ").append(duplicateLines).append(", tiles: ").append(tiles)
+                .append(", iterations: ").append(iterations).append(", residual: ").append(String.format(Locale.ROOT, "%.2f", residual))
+                .append(", slide depth: ").append(slideDepth);
+        return builder.toString();
+    }
+}
@@ -6,6 +6,24 @@ public abstract class Line implements Comparable<Line> {
 
     abstract void update();
 
+    // Bounding box of the line as drawn. Curve lines are drawn inside the rectangle between their two points.
+
+    public float getLeft() {
+        return Math.min(x1, x2);
+    }
+
+    public float getTop() {
+        return Math.min(y1, y2);
+    }
+
+    public float getRight() {
+        return Math.max(x1, x2);
+    }
+
+    public float getBottom() {
+        return Math.max(y1, y2);
+    }
+
     // Compare this line with another to establish the horizontal order
     @Override
     public int compareTo(Line line) {
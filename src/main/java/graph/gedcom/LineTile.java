@@ -0,0 +1,122 @@
+package graph.gedcom;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Group of lines drawn together, e.g. in one bitmap: the lines whose bounding box crosses the same square
+ * of the tile grid, where squares have the side of the max bitmap size.
+ * A line crossing more squares belongs to the tile of each of them, and each tile draws only its own part of the line:
+ * the rectangle of the tile is the union of the bounds of its lines cut to the square, so it's never bigger than the square.
+ * The only exception is the overflow tile, last of the list, with the few lines too long to be split in squares:
+ * its lines are whole and its rectangle can be bigger than the max bitmap size.
+ * Tiles are reused by the following layouts of the same graph.
+ */
+public class LineTile extends AbstractSet<Line> {
+
+    int column, row; // Position of the square in the tile grid
+    public float left, top, right, bottom; // Bounds of all the lines of this tile, inside the square unless overflow
+    private float squareLeft, squareTop, squareRight, squareBottom;
+    private boolean overflow;
+    private Line[] lines = new Line[8];
+    private int size;
+
+    /**
+     * Empties the tile to be used for another square.
+     *
+     * @param side Side of the squares of the grid
+     */
+    void reset(int column, int row, float side) {
+        this.column = column;
+        this.row = row;
+        squareLeft = column * side;
+        squareTop = row * side;
+        squareRight = squareLeft + side;
+        squareBottom = squareTop + side;
+        overflow = false;
+        empty();
+    }
+
+    /**
+     * Empties the tile to be used as overflow tile, whose lines are not cut to a square.
+     */
+    void resetOverflow() {
+        column = -1;
+        row = -1;
+        squareLeft = -Float.MAX_VALUE;
+        squareTop = -Float.MAX_VALUE;
+        squareRight = Float.MAX_VALUE;
+        squareBottom = Float.MAX_VALUE;
+        overflow = true;
+        empty();
+    }
+
+    private void empty() {
+        Arrays.fill(lines, 0, size, null);
+        size = 0;
+        left = Float.MAX_VALUE;
+        top = Float.MAX_VALUE;
+        right = -Float.MAX_VALUE;
+        bottom = -Float.MAX_VALUE;
+    }
+
+    void addLine(Line line) {
+        if (size == lines.length)
+            lines = Arrays.copyOf(lines, size * 2);
+        lines[size++] = line;
+        left = Math.min(left, Math.max(line.getLeft(), squareLeft));
+        top = Math.min(top, Math.max(line.getTop(), squareTop));
+        right = Math.max(right, Math.min(line.getRight(), squareRight));
+        bottom = Math.max(bottom, Math.min(line.getBottom(), squareBottom));
+    }
+
+    /**
+     * Access by position, to iterate the lines without creating an iterator.
+     */
+    public Line get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        return lines[index];
+    }
+
+    /**
+     * @return True if this is the overflow tile, with whole lines that can exceed the max bitmap size
+     */
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    public float getWidth() {
+        return right - left;
+    }
+
+    public float getHeight() {
+        return bottom - top;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Line> iterator() {
+        return new Iterator<Line>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Line next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return lines[next++];
+            }
+        };
+    }
+}
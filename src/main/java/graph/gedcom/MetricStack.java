@@ -0,0 +1,41 @@
+package graph.gedcom;
+
+import java.util.Arrays;
+
+/**
+ * Stack of metrics still to visit, used by the layout in place of recursion along the generations,
+ * so that deep diagrams don't overflow the thread stack.
+ * Each thread has its own stack, reused without allocations. Nested traversals work above the size found at their start.
+ */
+final class MetricStack {
+
+    private static final ThreadLocal<MetricStack> stacks = new ThreadLocal<MetricStack>() {
+        @Override
+        protected MetricStack initialValue() {
+            return new MetricStack();
+        }
+    };
+
+    private Metric[] items = new Metric[64];
+    private int size;
+
+    static MetricStack get() {
+        return stacks.get();
+    }
+
+    int size() {
+        return size;
+    }
+
+    void push(Metric metric) {
+        if (size == items.length)
+            items = Arrays.copyOf(items, size * 2);
+        items[size++] = metric;
+    }
+
+    Metric pop() {
+        Metric metric = items[--size];
+        items[size] = null;
+        return metric;
+    }
+}
@@ -25,7 +25,9 @@ public abstract class Node extends Metric {
     Node prev, next; // Previous and next node on the same row (same generation)
     Match match; // Position of this node inside possible marriages
     List<Node> origins; // Ordered chain of origins up until generation -1
+    final List<Node> originNodes = new ArrayList<>(2); // Returned by getOrigins(), filled by initializeOrigins()
     float force;
+    LayoutConfig config; // Spaces of the diagram
 
     /**
      * Returns the width from left until the middle of the main node.
@@ -37,14 +39,29 @@ public abstract class Node extends Metric {
      */
     abstract float simpleCenterX();
 
+    /**
+     * Registers a horizontal shift of this node, both as force of the actual layout iteration and as movement of its row.
+     */
+    void addForce(float shift) {
+        force += shift;
+        if (shift != 0 && union != null && union.row != null)
+            union.row.moved = true;
+    }
+
     /**
      * Shifts horizontally this node propagating shift on descendants.
      */
     void moveDescending(float shift) {
-        setX(x + shift);
-        if (youth != null) {
-            for (Node child : youth.list) {
-                child.moveDescending(shift);
+        MetricStack stack = MetricStack.get();
+        int base = stack.size();
+        stack.push(this);
+        while (stack.size() > base) {
+            Node node = (Node)stack.pop();
+            node.setX(node.x + shift);
+            if (node.youth != null) {
+                for (int i = node.youth.list.size() - 1; i >= 0; i--) {
+                    stack.push(node.youth.list.get(i));
+                }
             }
         }
     }
@@ -64,9 +81,10 @@ public abstract class Node extends Metric {
     void placeMiniChildrenX() {
         if (youth != null && youth.mini) {
             float posX = centerX();
-            for (Node child : youth.list) {
+            for (int i = 0; i < youth.list.size(); i++) {
+                Node child = youth.list.get(i);
                 child.x = posX;
-                posX += child.width + PROGENY_PLAY;
+                posX += child.width + config.progenyPlay;
             }
             youth.updateX();
             youth.setX(youth.x - youth.getWidth() / 2);
@@ -76,7 +94,9 @@ public abstract class Node extends Metric {
     // Position the origin of the acquired spouse
     void placeAcquiredOriginX() {
         if (this instanceof FamilyNode) {
-            for (PersonNode partner : ((FamilyNode)this).partners) {
+            List<PersonNode> partners = ((FamilyNode)this).partners;
+            for (int i = 0; i < partners.size(); i++) {
+                PersonNode partner = partners.get(i);
                 if (partner.acquired && partner.origin != null) {
                     partner.origin.setX(partner.centerX() - partner.origin.centerRelX());
                 }
@@ -86,9 +106,11 @@ public abstract class Node extends Metric {
 
     void placeAcquiredOriginY() {
         if (this instanceof FamilyNode && !mini) {
-            for (PersonNode partner : ((FamilyNode)this).partners) {
+            List<PersonNode> partners = ((FamilyNode)this).partners;
+            for (int i = 0; i < partners.size(); i++) {
+                PersonNode partner = partners.get(i);
                 if (partner.acquired && partner.origin != null) {
-                    partner.origin.setY(partner.y - ANCESTRY_DISTANCE - partner.origin.height);
+                    partner.origin.setY(partner.y - config.ancestryDistance - partner.origin.height);
                 }
             }
         }
@@ -105,18 +127,33 @@ public abstract class Node extends Metric {
     }
 
     /**
-     * Applies the shift to this node and propagates the overlap correction to previous or next node.
+     * Applies the shift to this node and propagates the overlap correction to previous or next nodes, one after the other.
+     *
+     * @return Number of nodes moved, this one included
      */
-    void slide(float shift) {
-        setX(x + shift);
-        if (shift > 0 && next != null) {
-            float rightOver = x + width + (union.equals(next.union) ? HORIZONTAL_SPACE : UNION_DISTANCE) - next.x;
-            if (rightOver > 0)
-                next.slide(rightOver);
-        } else if (shift < 0 && prev != null) {
-            float leftOver = prev.x + prev.width + (union.equals(prev.union) ? HORIZONTAL_SPACE : UNION_DISTANCE) - x;
-            if (leftOver > 0)
-                prev.slide(-leftOver);
+    int slide(float shift) {
+        Node node = this;
+        int moved = 1;
+        node.setX(node.x + shift);
+        while (true) {
+            if (shift > 0 && node.next != null) {
+                Node next = node.next;
+                float rightOver = node.x + node.width + (node.union.equals(next.union) ? node.config.horizontalSpace : node.config.unionDistance) - next.x;
+                if (!(rightOver > 0))
+                    return moved;
+                shift = rightOver;
+                node = next;
+            } else if (shift < 0 && node.prev != null) {
+                Node prev = node.prev;
+                float leftOver = prev.x + prev.width + (node.union.equals(prev.union) ? node.config.horizontalSpace : node.config.unionDistance) - node.x;
+                if (!(leftOver > 0))
+                    return moved;
+                shift = -leftOver;
+                node = prev;
+            } else
+                return moved;
+            node.setX(node.x + shift);
+            moved++;
         }
     }
 
@@ -126,8 +163,16 @@ public abstract class Node extends Metric {
 
     /**
      * Returns a list with zero, one or more origin nodes. Excluded mini and empty origins.
+     * The list is filled once by initializeOrigins(), so the layout can call it at will without allocations.
+     */
+    List<Node> getOrigins() {
+        return originNodes;
+    }
+
+    /**
+     * Adds to the list the origin nodes returned by getOrigins().
      */
-    abstract List<Node> getOrigins();
+    abstract void findOrigins(List<Node> origins);
 
     /**
      * This node contains at least one duplicate PersonNode.
@@ -161,10 +206,12 @@ public abstract class Node extends Metric {
     }
 
     /**
-     * Populates origins list.
+     * Populates origins list, and the list returned by getOrigins().
      */
     public void initializeOrigins() {
-        if (generation >= -1 && !mini) {
+        originNodes.clear();
+        findOrigins(originNodes);
+        if (generation >= -1 && (!mini || group != null && !group.mini)) { // Also a mini progeny beside an expanded sibling
             origins = new ArrayList<>();
             Node node = this;
             while (node != null && node.generation >= 0) {
@@ -175,6 +222,17 @@ public abstract class Node extends Metric {
         }
     }
 
+    /**
+     * Same as origins.contains(node), but in constant time: the origins of a node end with the origins of its first origin,
+     * so the node can only be found where its own origins follow it.
+     */
+    boolean hasOrigin(Node node) {
+        if (origins == null || node.origins == null)
+            return false;
+        int position = origins.size() - node.origins.size() - 1;
+        return position >= 0 && origins.get(position).equals(node);
+    }
+
     float columnShift; // How much to shift horizontally this node and its descendants
 
     /**
@@ -185,9 +243,9 @@ public abstract class Node extends Metric {
             columnShift = 0;
             // This node itself
             if (prev != null && union.equals(prev.union)) {
-                columnShift = prev.x + prev.width + HORIZONTAL_SPACE - x;
+                columnShift = prev.x + prev.width + config.horizontalSpace - x;
             }
-            findDescendantColumnShift(this);
+            findDescendantColumnShift();
             if (columnShift != 0) {
                 moveDescending(columnShift);
             }
@@ -195,21 +253,26 @@ public abstract class Node extends Metric {
     }
 
     /**
-     * Searches correct shift (positive or negative) in descendants of the same column. Recursive call.
-     *
-     * @param node The actual node to investigate the youth left overlap
-     */
-    private void findDescendantColumnShift(Node node) {
-        if (node.youth != null && !node.youth.mini) { // Node with regular descendants
-            Node first = node.youth.list.get(0);
-            if (first.prev != null && !first.prev.origins.contains(this)) {
-                float leftShift = first.prev.x + first.prev.width + UNION_DISTANCE - first.x; // Positive overlap or negative distance
-                if (leftShift > columnShift) {
-                    columnShift = leftShift;
+     * Searches correct shift (positive or negative) in descendants of the same column, investigating the youth left overlap
+     * of each node, from this one down.
+     */
+    private void findDescendantColumnShift() {
+        MetricStack stack = MetricStack.get();
+        int base = stack.size();
+        stack.push(this);
+        while (stack.size() > base) {
+            Node node = (Node)stack.pop();
+            if (node.youth != null && !node.youth.mini) { // Node with regular descendants
+                Node first = node.youth.list.get(0);
+                if (first.prev != null && !first.prev.hasOrigin(this)) {
+                    float leftShift = first.prev.x + first.prev.width + config.unionDistance - first.x; // Positive overlap or negative distance
+                    if (leftShift > columnShift) {
+                        columnShift = leftShift;
+                    }
+                }
+                for (int i = node.youth.list.size() - 1; i >= 0; i--) {
+                    stack.push(node.youth.list.get(i));
                 }
-            }
-            for (Node youthNode : node.youth.list) {
-                findDescendantColumnShift(youthNode);
             }
         }
     }
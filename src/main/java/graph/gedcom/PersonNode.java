@@ -2,12 +2,10 @@ package graph.gedcom;
 
 import graph.gedcom.Util.Branch;
 import graph.gedcom.Util.Card;
-import org.folg.gedcom.model.EventFact;
-import org.folg.gedcom.model.Family;
 import org.folg.gedcom.model.Gedcom;
 import org.folg.gedcom.model.Person;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static graph.gedcom.Util.essence;
@@ -17,8 +15,8 @@ import static graph.gedcom.Util.essence;
  */
 public class PersonNode extends Node {
 
-    private Gedcom gedcom;
     public Person person;
+    int personId; // ID of the person in GedcomIndex
     public Node origin; // The FamilyNode or PersonNode which this person was born from
     // public Family parentFamily; // Family in which the person is child TODO implement to replace PersonNode.origin.spouseFamily
     FamilyNode familyNode; // The FamilyNode in which this person is spouse. Null for singles.
@@ -28,22 +26,66 @@ public class PersonNode extends Node {
     public int amount; // Number to display in little ancestry or progeny
     public boolean duplicate; // This person already appeared on the diagram
     boolean isHalfSibling; // This person is a half-sibling of fulcrum
+    private final List<PersonNode> personNodes = Collections.singletonList(this); // Returned by getPersonNodes()
 
-    public PersonNode(Gedcom gedcom, Person person, Card type) {
+    /**
+     * @param index Provides the death and the number of ancestors or descendants of the mini cards
+     */
+    public PersonNode(GedcomIndex index, Person person, Card type, LayoutConfig config) {
         super();
-        this.gedcom = gedcom;
         this.person = person;
+        this.config = config;
+        init(index, type);
+    }
+
+    /**
+     * @deprecated Indexes the whole Gedcom for each node and uses the default LayoutConfig:
+     * use the constructor with the GedcomIndex shared by the diagram.
+     */
+    @Deprecated
+    public PersonNode(Gedcom gedcom, Person person, Card type) {
+        this(new GedcomIndex(gedcom), person, type, new LayoutConfig.Builder().build());
+    }
+
+    /**
+     * Sets the node as just created, except for the size, to be reused in a new diagram with the same person and type.
+     */
+    void reset(GedcomIndex index, LayoutConfig config) {
+        this.config = config;
+        spouseFamily = null;
+        group = null;
+        youth = null;
+        generation = 0;
+        mini = false;
+        isAncestor = false;
+        marriedSiblings = false;
+        union = null;
+        prev = null;
+        next = null;
+        match = null;
+        origins = null;
+        originNodes.clear();
+        force = 0;
+        x = 0;
+        y = 0;
+        origin = null;
+        familyNode = null;
+        acquired = false;
+        duplicate = false;
+        isHalfSibling = false;
+        init(index, type);
+    }
+
+    private void init(GedcomIndex index, Card type) {
         this.type = type;
+        personId = index.getId(person);
         if (type == Card.FULCRUM || type == Card.REGULAR) {
-            if (isDead())
-                dead = true;
+            dead = index.getAttributes().isDead(personId);
         } else if (type == Card.ANCESTRY) {
-            amount = 1;
-            countAncestors(person);
+            amount = 1 + index.getStatistics().countAncestors(personId);
             mini = true;
         } else if (type == Card.PROGENY) {
-            amount = 1;
-            countDescendants(person);
+            amount = 1 + index.getStatistics().countDescendants(personId);
             mini = true;
         }
     }
@@ -54,11 +96,9 @@ public class PersonNode extends Node {
     }
 
     @Override
-    List<Node> getOrigins() {
-        List<Node> origins = new ArrayList<>();
+    void findOrigins(List<Node> origins) {
         if (origin != null)
             origins.add(origin);
-        return origins;
     }
 
     @Override
@@ -73,9 +113,7 @@ public class PersonNode extends Node {
 
     @Override
     List<PersonNode> getPersonNodes() {
-        List<PersonNode> persons = new ArrayList<>();
-        persons.add(this);
-        return persons;
+        return personNodes;
     }
 
     @Override
@@ -108,48 +146,6 @@ public class PersonNode extends Node {
         return null;
     }
 
-    /**
-     * Recursive count of direct ancestors.
-     */
-    private void countAncestors(Person ancestor) {
-        if (amount <= 100) {
-            for (Family family : ancestor.getParentFamilies(gedcom)) {
-                for (Person father : family.getHusbands(gedcom)) {
-                    amount++;
-                    countAncestors(father);
-                }
-                for (Person mother : family.getWives(gedcom)) {
-                    amount++;
-                    countAncestors(mother);
-                }
-            }
-        }
-    }
-
-    /**
-     * Recursive count of direct descendants.
-     */
-    private void countDescendants(Person person) {
-        if (amount <= 100) {
-            for (Family family : person.getSpouseFamilies(gedcom))
-                for (Person child : family.getChildren(gedcom)) {
-                    amount++;
-                    countDescendants(child);
-                }
-        }
-    }
-
-    /**
-     * Checks if this person is dead or buried.
-     */
-    private boolean isDead() {
-        for (EventFact fact : person.getEventsFacts()) {
-            if (fact.getTag().equals("DEAT") || fact.getTag().equals("BURI"))
-                return true;
-        }
-        return false;
-    }
-
     /**
      * There should be only one fulcrum node.
      */
@@ -174,7 +170,7 @@ public class PersonNode extends Node {
 
     @Override
     void setX(float x) {
-        force += x - this.x;
+        addForce(x - this.x);
         this.x = x;
     }
 
@@ -0,0 +1,244 @@
+package graph.gedcom;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Uniform grid over the person nodes, bonds and lines of a placed diagram, to find them by position in constant time
+ * instead of scanning all the lists. Created by Graph.createSpatialIndex() when placement is final: later moves
+ * of the nodes are not reflected. Being immutable, it can be queried by many threads.
+ */
+public class SpatialIndex {
+
+    private static final int MAX_CELLS_PER_SIDE = 1024;
+
+    private final Grid<PersonNode> personNodes;
+    private final Grid<Bond> bonds;
+    private final Grid<Line> lines;
+
+    SpatialIndex(List<PersonNode> personNodes, List<Bond> bonds, List<? extends Line> lines, List<? extends Line> backLines,
+                 List<? extends Line> duplicateLines) {
+        float[] personBounds = new float[personNodes.size() * 4];
+        for (int i = 0; i < personNodes.size(); i++)
+            setBounds(personBounds, i, personNodes.get(i));
+        this.personNodes = new Grid<>(personNodes.toArray(), personBounds);
+        float[] bondBounds = new float[bonds.size() * 4];
+        for (int i = 0; i < bonds.size(); i++)
+            setBounds(bondBounds, i, bonds.get(i));
+        this.bonds = new Grid<>(bonds.toArray(), bondBounds);
+        int totalLines = lines.size() + backLines.size() + duplicateLines.size();
+        Object[] allLines = new Object[totalLines];
+        float[] lineBounds = new float[totalLines * 4];
+        int i = 0;
+        for (Line line : lines)
+            setBounds(lineBounds, allLines, i++, line);
+        for (Line line : backLines)
+            setBounds(lineBounds, allLines, i++, line);
+        for (Line line : duplicateLines)
+            setBounds(lineBounds, allLines, i++, line);
+        this.lines = new Grid<>(allLines, lineBounds);
+    }
+
+    private static void setBounds(float[] bounds, int i, Metric metric) {
+        bounds[i * 4] = metric.x;
+        bounds[i * 4 + 1] = metric.y;
+        bounds[i * 4 + 2] = metric.x + metric.width;
+        bounds[i * 4 + 3] = metric.y + metric.height;
+    }
+
+    private static void setBounds(float[] bounds, Object[] items, int i, Line line) {
+        items[i] = line;
+        bounds[i * 4] = line.getLeft();
+        bounds[i * 4 + 1] = line.getTop();
+        bounds[i * 4 + 2] = line.getRight();
+        bounds[i * 4 + 3] = line.getBottom();
+    }
+
+    /**
+     * @return The person node whose card contains the point, or null
+     */
+    public PersonNode nodeAt(float x, float y) {
+        return personNodes.at(x, y);
+    }
+
+    /**
+     * @return The bond (marriage oval or line between partners) containing the point, or null
+     */
+    public Bond bondAt(float x, float y) {
+        return bonds.at(x, y);
+    }
+
+    /**
+     * @return The person node with the card nearest to the point, or null if the diagram is empty
+     */
+    public PersonNode nearest(float x, float y) {
+        return personNodes.nearest(x, y);
+    }
+
+    /**
+     * Adds to the collection the person nodes whose card intersects the rectangle, each one once.
+     */
+    public void queryNodes(float left, float top, float right, float bottom, Collection<? super PersonNode> result) {
+        personNodes.query(left, top, right, bottom, result);
+    }
+
+    /**
+     * Adds to the collection the bonds intersecting the rectangle.
+     */
+    public void queryBonds(float left, float top, float right, float bottom, Collection<? super Bond> result) {
+        bonds.query(left, top, right, bottom, result);
+    }
+
+    /**
+     * Adds to the collection the lines, back lines and duplicate lines whose bounding box intersects the rectangle.
+     */
+    public void queryLines(float left, float top, float right, float bottom, Collection<? super Line> result) {
+        lines.query(left, top, right, bottom, result);
+    }
+
+    /**
+     * Items of one kind distributed in square cells. Each item is stored in all the cells it overlaps,
+     * using compressed rows: the items of the cell 'c' are 'cellItems[cellStart[c]]' to 'cellItems[cellStart[c + 1] - 1]'.
+     */
+    private static class Grid<T> {
+        final Object[] items;
+        final float[] bounds; // Left, top, right and bottom of each item
+        float minX, minY;
+        float cellSize;
+        int columns, rows;
+        int[] cellStart;
+        int[] cellItems;
+
+        Grid(Object[] items, float[] bounds) {
+            this.items = items;
+            this.bounds = bounds;
+            int count = items.length;
+            if (count == 0) {
+                columns = rows = 1;
+                cellSize = 1;
+                cellStart = new int[2];
+                cellItems = new int[0];
+                return;
+            }
+            minX = Float.MAX_VALUE;
+            minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                minX = Math.min(minX, bounds[i * 4]);
+                minY = Math.min(minY, bounds[i * 4 + 1]);
+                maxX = Math.max(maxX, bounds[i * 4 + 2]);
+                maxY = Math.max(maxY, bounds[i * 4 + 3]);
+            }
+            float width = maxX - minX, height = maxY - minY;
+            // About one cell per item, but not too many cells on a side
+            cellSize = Math.max((float)Math.sqrt((double)width * height / count), Math.max(width, height) / MAX_CELLS_PER_SIDE);
+            cellSize = Math.max(cellSize, 1);
+            columns = (int)(width / cellSize) + 1;
+            rows = (int)(height / cellSize) + 1;
+            // Counts the items of each cell, then fills the cells
+            cellStart = new int[columns * rows + 1];
+            for (int i = 0; i < count; i++) {
+                for (int r = row(bounds[i * 4 + 1]); r <= row(bounds[i * 4 + 3]); r++) {
+                    for (int c = column(bounds[i * 4]); c <= column(bounds[i * 4 + 2]); c++)
+                        cellStart[r * columns + c + 1]++;
+                }
+            }
+            for (int c = 0; c < columns * rows; c++)
+                cellStart[c + 1] += cellStart[c];
+            cellItems = new int[cellStart[columns * rows]];
+            int[] fill = new int[columns * rows];
+            for (int i = 0; i < count; i++) {
+                for (int r = row(bounds[i * 4 + 1]); r <= row(bounds[i * 4 + 3]); r++) {
+                    for (int c = column(bounds[i * 4]); c <= column(bounds[i * 4 + 2]); c++) {
+                        int cell = r * columns + c;
+                        cellItems[cellStart[cell] + fill[cell]++] = i;
+                    }
+                }
+            }
+        }
+
+        int column(float x) {
+            return Math.max(0, Math.min(columns - 1, (int)((x - minX) / cellSize)));
+        }
+
+        int row(float y) {
+            return Math.max(0, Math.min(rows - 1, (int)((y - minY) / cellSize)));
+        }
+
+        @SuppressWarnings("unchecked")
+        T at(float x, float y) {
+            int cell = row(y) * columns + column(x);
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                int i = cellItems[k];
+                if (x >= bounds[i * 4] && x <= bounds[i * 4 + 2] && y >= bounds[i * 4 + 1] && y <= bounds[i * 4 + 3])
+                    return (T)items[i];
+            }
+            return null;
+        }
+
+        /**
+         * Visits the cells in square rings around the point, until the unvisited cells are farther than the best item found.
+         */
+        @SuppressWarnings("unchecked")
+        T nearest(float x, float y) {
+            if (items.length == 0)
+                return null;
+            int column = column(x), row = row(y);
+            int best = -1;
+            float bestDistance = Float.MAX_VALUE;
+            int maxRing = Math.max(columns, rows);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                for (int r = row - ring; r <= row + ring; r++) {
+                    if (r < 0 || r >= rows)
+                        continue;
+                    boolean edgeRow = r == row - ring || r == row + ring;
+                    for (int c = column - ring; c <= column + ring; c += edgeRow ? 1 : 2 * ring) {
+                        if (c >= 0 && c < columns) {
+                            int cell = r * columns + c;
+                            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                                int i = cellItems[k];
+                                float distance = distance(i, x, y);
+                                if (distance < bestDistance) {
+                                    bestDistance = distance;
+                                    best = i;
+                                }
+                            }
+                        }
+                        if (ring == 0)
+                            break;
+                    }
+                }
+                if (best >= 0 && bestDistance <= ring * cellSize)
+                    break;
+            }
+            return (T)items[best];
+        }
+
+        private float distance(int i, float x, float y) {
+            float dx = Math.max(Math.max(bounds[i * 4] - x, x - bounds[i * 4 + 2]), 0);
+            float dy = Math.max(Math.max(bounds[i * 4 + 1] - y, y - bounds[i * 4 + 3]), 0);
+            return (float)Math.sqrt(dx * dx + dy * dy);
+        }
+
+        /**
+         * An item overlapping many cells is added only from the cell containing the top left corner of its intersection
+         * with the rectangle, so no marks are needed and concurrent queries are possible.
+         */
+        @SuppressWarnings("unchecked")
+        void query(float left, float top, float right, float bottom, Collection<? super T> result) {
+            if (items.length == 0)
+                return;
+            for (int r = row(top); r <= row(bottom); r++) {
+                for (int c = column(left); c <= column(right); c++) {
+                    int cell = r * columns + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int i = cellItems[k];
+                        if (bounds[i * 4] <= right && bounds[i * 4 + 2] >= left && bounds[i * 4 + 1] <= bottom && bounds[i * 4 + 3] >= top
+                                && column(Math.max(bounds[i * 4], left)) == c && row(Math.max(bounds[i * 4 + 1], top)) == r)
+                            result.add((T)items[i]);
+                    }
+                }
+            }
+        }
+    }
+}
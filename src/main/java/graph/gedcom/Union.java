@@ -4,9 +4,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import static graph.gedcom.Util.HORIZONTAL_SPACE;
-import static graph.gedcom.Util.UNION_DISTANCE;
-
 /**
  * Stores a list of PersonNodes and/or FamilyNodes that move horizontally together, ordered left to right.
  * It may coincide with a Group of descendants, or it may be the result of two Groups of ancestors merged together,
@@ -17,12 +14,15 @@ public class Union extends Metric {
     List<Node> list; // List of PersonNodes and FamilyNodes that move horizontally together
     int generation;
     Node ancestor; // The ancestor node of fulcrum, or fulcrum itself FamilyNode/PersonNode. Null for cousins and descendants.
+    UnionRow row; // The row containing this union
     Union prev, next; // Previous and next union on the same row (same generation)
     List<Union> descendants; // List of unions descendant of this one, especially for ancestor unions down until generation -1
     List<Group> youths; // Youths belonging to this union, especially for descendant union
+    LayoutConfig config;
 
-    Union(int generation) {
+    Union(int generation, LayoutConfig config) {
         list = new ArrayList<>();
+        this.config = config;
         this.generation = generation;
     }
 
@@ -53,6 +53,17 @@ public class Union extends Metric {
         }
     }
 
+    /**
+     * Same as descendants.contains(union), but in constant time: the descendants of a union end with the descendants
+     * of its first descendant, so the union can only be found where its own descendants follow it.
+     */
+    boolean hasDescendant(Union union) {
+        if (descendants == null || union.descendants == null)
+            return false;
+        int position = descendants.size() - union.descendants.size() - 1;
+        return position >= 0 && descendants.get(position).equals(union);
+    }
+
     /**
      * Populates youths list for this union. To be called once.
      */
@@ -74,7 +85,7 @@ public class Union extends Metric {
             Union rightUnion = origins.get(1).union;
             leftUnion.updateX();
             rightUnion.updateX();
-            float overlap = leftUnion.x + leftUnion.getWidth() + UNION_DISTANCE - rightUnion.x;
+            float overlap = leftUnion.x + leftUnion.getWidth() + config.unionDistance - rightUnion.x;
             if (overlap > 0) {
                 leftUnion.moveAscending(-overlap / 2);
                 rightUnion.moveAscending(overlap / 2);
@@ -82,19 +93,30 @@ public class Union extends Metric {
         }
     }
 
+    /**
+     * Shifts horizontally this union and the unions of its ancestors.
+     */
     void moveAscending(float shift) {
-        updateX();
-        setX(x + shift);
-        if (ancestor != null) { // First cousin does not have ancestor
-            for (Node origin : ancestor.getOrigins()) {
-                origin.union.moveAscending(shift);
+        MetricStack stack = MetricStack.get();
+        int base = stack.size();
+        stack.push(this);
+        while (stack.size() > base) {
+            Union union = (Union)stack.pop();
+            union.updateX();
+            union.setX(union.x + shift);
+            if (union.ancestor != null) { // First cousin does not have ancestor
+                List<Node> origins = union.ancestor.getOrigins();
+                for (int i = origins.size() - 1; i >= 0; i--) {
+                    stack.push(origins.get(i).union);
+                }
             }
         }
     }
 
     void moveDescending(float shift) {
         setX(x + shift);
-        for (Node node : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Node node = list.get(i);
             if (node.youth != null) node.youth.moveDescending(shift);
         }
     }
@@ -110,39 +132,53 @@ public class Union extends Metric {
         ancestor.youth.updateX(); // Useful
         float youthDistance = ancestor.youth.centerX() - centerX();
         if (prev != null && prev.descendants.get(0).equals(descendants.get(0))) {
-            float leftShift = prev.x + prev.getWidth() + UNION_DISTANCE - x; // Positive overlap or negative distance
+            float leftShift = prev.x + prev.getWidth() + config.unionDistance - x; // Positive overlap or negative distance
             columnShift = Math.max(leftShift, youthDistance);
         }
         if (next != null && next.descendants.get(0).equals(descendants.get(0))) {
-            float rightShift = next.x - x - getWidth() - UNION_DISTANCE; // Negative overlap or positive distance
+            float rightShift = next.x - x - getWidth() - config.unionDistance; // Negative overlap or positive distance
             columnShift = Math.min(rightShift, youthDistance);
         }
-        findAncestorColumnShift(ancestor);
+        findAncestorColumnShift();
         if (columnShift != 0) {
             moveAscending(columnShift);
         }
     }
 
     /**
-     * Recursive method to find the maximum shift to move the union column.
+     * Finds the maximum shift to move the union column, looking at the unions of all the ancestors above.
      */
-    private void findAncestorColumnShift(Node node) {
-        for (Node origin : node.getOrigins()) {
+    private void findAncestorColumnShift() {
+        MetricStack stack = MetricStack.get();
+        int base = stack.size();
+        pushOrigins(stack, ancestor);
+        while (stack.size() > base) {
+            Node origin = (Node)stack.pop();
             Union prev = origin.union.prev;
-            if (prev != null && !prev.descendants.contains(this)) {
-                float leftShift = prev.x + prev.getWidth() + UNION_DISTANCE - origin.union.x; // Positive overlap or negative distance
+            if (prev != null && !prev.hasDescendant(this)) {
+                float leftShift = prev.x + prev.getWidth() + config.unionDistance - origin.union.x; // Positive overlap or negative distance
                 if (leftShift > columnShift) {
                     columnShift = leftShift;
                 }
             }
             Union next = origin.union.next;
-            if (next != null && !next.descendants.contains(this)) {
-                float rightShift = next.x - origin.union.x - origin.union.getWidth() - UNION_DISTANCE; // Negative overlap or positive distance
+            if (next != null && !next.hasDescendant(this)) {
+                float rightShift = next.x - origin.union.x - origin.union.getWidth() - config.unionDistance; // Negative overlap or positive distance
                 if (rightShift < columnShift) {
                     columnShift = rightShift;
                 }
             }
-            findAncestorColumnShift(origin);
+            pushOrigins(stack, origin);
+        }
+    }
+
+    /**
+     * Pushes the origins of the node so that the first one is popped first.
+     */
+    private static void pushOrigins(MetricStack stack, Node node) {
+        List<Node> origins = node.getOrigins();
+        for (int i = origins.size() - 1; i >= 0; i--) {
+            stack.push(origins.get(i));
         }
     }
 
@@ -178,14 +214,15 @@ public class Union extends Metric {
     void distributeNodesOverYouth() {
         if (!youths.isEmpty()) {
             // Places nodes over youths
-            for (Group youth : youths) {
+            for (int i = 0; i < youths.size(); i++) {
+                Group youth = youths.get(i);
                 youth.updateX();
                 youth.origin.setX(youth.centerX() - youth.origin.centerRelX());
             }
             // Left nodes
             Node node = youths.get(0).origin;
             while (node.prev != null && node.prev.union.equals(this)) {
-                node.prev.setX(node.x - HORIZONTAL_SPACE - node.prev.width);
+                node.prev.setX(node.x - config.horizontalSpace - node.prev.width);
                 node = node.prev;
             }
             // Middle nodes
@@ -202,7 +239,7 @@ public class Union extends Metric {
             // Right nodes
             node = youths.get(youths.size() - 1).origin;
             while (node.next != null && node.next.union.equals(this)) {
-                node.next.setX(node.x + node.width + HORIZONTAL_SPACE);
+                node.next.setX(node.x + node.width + config.horizontalSpace);
                 node = node.next;
             }
         }
@@ -223,7 +260,8 @@ public class Union extends Metric {
     @Override
     void setX(float x) {
         float diff = x - this.x;
-        for (Node node : list) {
+        for (int i = 0; i < list.size(); i++) {
+            Node node = list.get(i);
             node.setX(node.x + diff);
         }
         this.x = x;
@@ -231,8 +269,8 @@ public class Union extends Metric {
 
     @Override
     void setY(float y) {
-        for (Node node : list) {
-            node.setY(y);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).setY(y);
         }
         this.y = y;
     }
@@ -251,8 +289,8 @@ public class Union extends Metric {
 
     float getHeight() {
         float height = 0;
-        for (Node node : list)
-            height = Math.max(height, node.height);
+        for (int i = 0; i < list.size(); i++)
+            height = Math.max(height, list.get(i).height);
         return height;
     }
 
@@ -3,9 +3,6 @@ package graph.gedcom;
 import java.util.ArrayList;
 import java.util.List;
 
-import static graph.gedcom.Util.HORIZONTAL_SPACE;
-import static graph.gedcom.Util.UNION_DISTANCE;
-
 /**
  * List of unions of the same generation, ordered left to right.
  */
@@ -14,6 +11,7 @@ public class UnionRow extends ArrayList<Union> {
     int generation;
     float yAxe;
     Node central; // For generation -1 is fulcrum's parents, otherwise more or less the central node
+    boolean moved; // Some node of this row has been moved horizontally
 
     UnionRow(int generation, float yAxe) {
         this.generation = generation;
@@ -22,6 +20,7 @@ public class UnionRow extends ArrayList<Union> {
 
     void addUnion(Union union) {
         add(union);
+        union.row = this;
     }
 
     /**
@@ -38,32 +37,36 @@ public class UnionRow extends ArrayList<Union> {
 
     /**
      * Resolves overlaps of all nodes in this row of unions.
+     *
+     * @return Max number of nodes moved by a single overlap correction
      */
-    void resolveOverlap() {
+    int resolveOverlap() {
+        int depth = 0;
         Node left = central;
         while (left.prev != null) {
-            float gap = left.union.equals(left.prev.union) ? HORIZONTAL_SPACE : UNION_DISTANCE;
+            float gap = left.union.equals(left.prev.union) ? left.config.horizontalSpace : left.config.unionDistance;
             float overlap = left.prev.x + left.prev.width + gap - left.x;
             if (overlap > 0)
-                left.prev.slide(-overlap);
+                depth = Math.max(depth, left.prev.slide(-overlap));
             left = left.prev;
         }
         Node right = central;
         while (right.next != null) {
-            float gap = right.union.equals(right.next.union) ? HORIZONTAL_SPACE : UNION_DISTANCE;
+            float gap = right.union.equals(right.next.union) ? right.config.horizontalSpace : right.config.unionDistance;
             float overlap = right.x + right.width + gap - right.next.x;
             if (overlap > 0)
-                right.next.slide(overlap);
+                depth = Math.max(depth, right.next.slide(overlap));
             right = right.next;
         }
+        return depth;
     }
 
     /**
      * Separates each couple of ancestor unions resolving their overlap only.
      */
     void placeOriginsAscending() {
-        for (Union union : this) {
-            union.placeOriginsAscending();
+        for (int i = 0; i < size(); i++) {
+            get(i).placeOriginsAscending();
         }
     }
 
@@ -71,8 +74,8 @@ public class UnionRow extends ArrayList<Union> {
      * Shifts horizontally ancestors resolving overlap and also compacting excessive space.
      */
     void outdistanceAncestorColumns() {
-        for (Union union : this) {
-            union.outdistanceAncestorColumn();
+        for (int i = 0; i < size(); i++) {
+            get(i).outdistanceAncestorColumn();
         }
     }
 
@@ -80,18 +83,20 @@ public class UnionRow extends ArrayList<Union> {
      * Shifts horizontally descendants resolving overlap and also compacting excessive space.
      */
     void outdistanceDescendantColumns() {
-        for (Union union : this) {
-            for (Node node : union.list) {
-                node.outdistanceDescendantColumn();
+        for (int i = 0; i < size(); i++) {
+            Union union = get(i);
+            for (int j = 0; j < union.list.size(); j++) {
+                union.list.get(j).outdistanceDescendantColumn();
             }
             union.distributeNodesOverYouth();
         }
     }
 
     void placeYouths() {
-        for (Union union : this) {
-            for (Node node : union.list) {
-                node.placeYouthX();
+        for (int i = 0; i < size(); i++) {
+            Union union = get(i);
+            for (int j = 0; j < union.list.size(); j++) {
+                union.list.get(j).placeYouthX();
             }
         }
     }
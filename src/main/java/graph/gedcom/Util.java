@@ -6,8 +6,10 @@ import org.folg.gedcom.model.Person;
 
 public class Util {
 
+    // Default values of LayoutConfig
     public static int VERTICAL_SPACE = 90; // Vertical space between rows of nodes
-    public static int VERTICAL_SPACE_CALC; // Same resized on displayNumbers
+    @Deprecated
+    public static int VERTICAL_SPACE_CALC; // Of the last diagram prepared by startFrom(): use Graph.getLayoutConfig() instead
     public static int HORIZONTAL_SPACE = 15; // Horizontal space between nodes of the same group
     public static int UNION_DISTANCE = 35; // Horizontal space between unions of the same row
 
@@ -20,7 +22,8 @@ public class Util {
     public static int MINI_HEARTH_DIAMETER = 6; // Mini family node without date
 
     public static int LITTLE_GROUP_DISTANCE = 60; // Vertical space below family node without partners or below mini ancestry, both with many children
-    public static int LITTLE_GROUP_DISTANCE_CALC; // Same resized on displayNumbers
+    @Deprecated
+    public static int LITTLE_GROUP_DISTANCE_CALC; // Of the last diagram prepared by startFrom(): use Graph.getLayoutConfig() instead
     public static int ANCESTRY_DISTANCE = 12; // Vertical space between mini ancestry and person node
     public static int PROGENY_DISTANCE = 16; // Vertical space between family node and mini progeny
     public static int PROGENY_PLAY = 12; // Horizontal space between progeny mini cards
@@ -154,7 +157,7 @@ public class Util {
             // str = person.getId() + " ";
             if (!person.getNames().isEmpty()) {
                 Name name = person.getNames().get(0);
-                str += name.getDisplayValue().replaceAll("/", "");
+                str += removeSlashes(name.getDisplayValue());
                 // if (name.getNickname() != null) str += " \"" + name.getNickname() + "\"";
             }
             // str += " " + person.hashCode();
@@ -164,6 +167,17 @@ public class Util {
         return str;
     }
 
+    private static String removeSlashes(String value) {
+        if (value.indexOf('/') < 0)
+            return value;
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '/') builder.append(c);
+        }
+        return builder.toString();
+    }
+
     /**
      * Prints anything to the console.
      */
@@ -0,0 +1,77 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Card;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking the numbers of the mini cards and GedcomStatistics against a plain recursive collection
+ * of the distinct ancestors and descendants, on tree.ged and on generated trees with pedigree collapse.
+ */
+public class Counts {
+
+    public static void main(String[] args) throws Exception {
+        new Counts();
+    }
+
+    Counts() throws Exception {
+        int persons = 0;
+        int minis = 0;
+        for (Gedcom gedcom : Fixtures.gedcoms(2)) {
+            // Counts computed in parallel for the whole Gedcom
+            GedcomStatistics statistics = new GedcomIndex(gedcom).getStatistics();
+            statistics.computeAll(4);
+            for (Person person : gedcom.getPeople()) {
+                if (statistics.countAncestors(person) != collect(gedcom, person, true, new HashSet<Person>()) - 1
+                        || statistics.countDescendants(person) != collect(gedcom, person, false, new HashSet<Person>()) - 1)
+                    throw new IllegalStateException("Counts of " + person.getId() + " differ");
+                persons++;
+            }
+            // Numbers of the mini cards
+            List<Person> people = gedcom.getPeople();
+            for (int[] settings : Fixtures.SETTINGS) {
+                Graph graph = Fixtures.createGraph(gedcom, settings).displayNumbers(true);
+                for (Person fulcrum : people.subList(0, Math.min(30, people.size()))) {
+                    graph.startFrom(fulcrum);
+                    for (PersonNode personNode : graph.getPersonNodes()) {
+                        if (!personNode.mini)
+                            continue;
+                        int amount = collect(gedcom, personNode.person, personNode.type == Card.ANCESTRY, new HashSet<Person>());
+                        if (personNode.amount != amount)
+                            throw new IllegalStateException("Mini card " + personNode.person.getId() + " in the diagram of "
+                                    + fulcrum.getId() + " shows " + personNode.amount + " instead of " + amount);
+                        minis++;
+                    }
+                }
+            }
+        }
+        p(persons, "persons and", minis, "mini cards with the counts of the recursive collection");
+    }
+
+    // The person with all the distinct ancestors or descendants
+    private int collect(Gedcom gedcom, Person person, boolean up, Set<Person> persons) {
+        if (!persons.add(person))
+            return persons.size();
+        if (up) {
+            for (Family family : person.getParentFamilies(gedcom)) {
+                for (Person parent : family.getHusbands(gedcom))
+                    collect(gedcom, parent, true, persons);
+                for (Person parent : family.getWives(gedcom))
+                    collect(gedcom, parent, true, persons);
+            }
+        } else {
+            for (Family family : person.getSpouseFamilies(gedcom)) {
+                for (Person child : family.getChildren(gedcom))
+                    collect(gedcom, child, false, persons);
+            }
+        }
+        return persons.size();
+    }
+}
@@ -0,0 +1,147 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.ChildRef;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.ParentFamilyRef;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.model.SpouseFamilyRef;
+import org.folg.gedcom.model.SpouseRef;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking that very deep lines and very wide rows are laid out in a thread with a small stack.
+ */
+public class Deep {
+
+    static final int GENERATIONS = 3000;
+    static final int CHILDREN = 20000;
+
+    public static void main(String[] args) throws Exception {
+        final Throwable[] error = new Throwable[1];
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new Deep();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        }, "Deep", 128 * 1024);
+        thread.start();
+        thread.join();
+        if (error[0] != null)
+            throw new IllegalStateException(error[0]);
+    }
+
+    Deep() {
+        // A line of fathers and sons
+        Gedcom line = new Gedcom();
+        Person[] persons = new Person[GENERATIONS];
+        for (int i = 0; i < GENERATIONS; i++) {
+            persons[i] = addPerson(line, "I" + i);
+            if (i > 0)
+                addChild(addFamily(line, "F" + i, persons[i - 1]), persons[i]);
+        }
+        line.createIndexes();
+
+        Graph graph = new Graph();
+        graph.setGedcom(line).maxAncestors(0).maxDescendants(GENERATIONS);
+        graph.startFrom(persons[0]);
+        Fixtures.place(graph);
+        checkLine(graph, "Descendant");
+
+        graph = new Graph();
+        graph.setGedcom(line).maxAncestors(GENERATIONS).maxDescendants(0);
+        graph.startFrom(persons[GENERATIONS - 1]);
+        Fixtures.place(graph);
+        checkLine(graph, "Ancestor");
+        graph.setForkJoinPool(new ForkJoinPool(2));
+        graph.startFrom(persons[GENERATIONS - 1]);
+        Fixtures.place(graph);
+        checkLine(graph, "Parallel ancestor");
+
+        // A father of many children, pushed aside by a bigger first child
+        Gedcom row = new Gedcom();
+        Person father = addPerson(row, "I0");
+        Family family = addFamily(row, "F1", father);
+        for (int i = 1; i <= CHILDREN; i++)
+            addChild(family, addPerson(row, "I" + i));
+        row.createIndexes();
+        graph = new Graph();
+        graph.setGedcom(row).maxAncestors(0).maxDescendants(1);
+        graph.startFrom(father);
+        Fixtures.place(graph);
+        List<PersonNode> children = new ArrayList<>();
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            if (personNode.person != father)
+                children.add(personNode);
+        }
+        PersonNode first = children.get(0);
+        graph.resizeNode(first, first.width * 10, first.height);
+        graph.placeResizedNodes();
+        Collections.sort(children, new Comparator<PersonNode>() {
+            @Override
+            public int compare(PersonNode first, PersonNode second) {
+                return Float.compare(first.x, second.x);
+            }
+        });
+        for (int i = 1; i < children.size(); i++) {
+            PersonNode previous = children.get(i - 1);
+            if (children.get(i).x < previous.x + previous.width)
+                throw new IllegalStateException("Children " + previous.person.getId() + " and " + children.get(i).person.getId() + " overlap");
+        }
+        p(GENERATIONS, "generations and", CHILDREN, "children laid out with a stack of 128 KB");
+    }
+
+    private Person addPerson(Gedcom gedcom, String id) {
+        Person person = new Person();
+        person.setId(id);
+        gedcom.addPerson(person);
+        return person;
+    }
+
+    private Family addFamily(Gedcom gedcom, String id, Person father) {
+        Family family = new Family();
+        family.setId(id);
+        SpouseRef spouseRef = new SpouseRef();
+        spouseRef.setRef(father.getId());
+        family.addHusband(spouseRef);
+        SpouseFamilyRef spouseFamilyRef = new SpouseFamilyRef();
+        spouseFamilyRef.setRef(id);
+        father.addSpouseFamilyRef(spouseFamilyRef);
+        gedcom.addFamily(family);
+        return family;
+    }
+
+    private void addChild(Family family, Person child) {
+        ChildRef childRef = new ChildRef();
+        childRef.setRef(child.getId());
+        family.addChild(childRef);
+        ParentFamilyRef parentRef = new ParentFamilyRef();
+        parentRef.setRef(family.getId());
+        child.addParentFamilyRef(parentRef);
+    }
+
+    // Each generation in a row below the previous one
+    private void checkLine(Graph graph, String kind) {
+        List<PersonNode> personNodes = graph.getPersonNodes();
+        if (personNodes.size() != GENERATIONS)
+            throw new IllegalStateException(kind + " line of " + personNodes.size() + " persons");
+        float[] tops = new float[GENERATIONS];
+        for (PersonNode personNode : personNodes)
+            tops[Integer.parseInt(personNode.person.getId().substring(1))] = personNode.y;
+        for (int i = 1; i < GENERATIONS; i++) {
+            if (tops[i] <= tops[i - 1])
+                throw new IllegalStateException(kind + " line not in rows");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Card;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking expand() on tree.ged and on generated trees:
+ * expanding all the mini ancestries of the top generation gives the same diagram of one more ancestor generation,
+ * and expanding a mini progeny turns only that child into a regular descendant, as in a diagram expanded before its first layout.
+ */
+public class Expansion {
+
+    public static void main(String[] args) throws Exception {
+        new Expansion();
+    }
+
+    Expansion() throws Exception {
+        int ancestries = 0;
+        int progenies = 0;
+        for (Gedcom gedcom : Fixtures.gedcoms(3)) {
+            List<Person> people = gedcom.getPeople();
+            for (Person fulcrum : people.subList(0, Math.min(60, people.size()))) {
+                for (int[] settings : Fixtures.SETTINGS) {
+                    expandAncestries(gedcom, fulcrum, settings);
+                    ancestries++;
+                    if (expandProgeny(gedcom, fulcrum, settings))
+                        progenies++;
+                }
+            }
+        }
+        p(ancestries, "expanded diagrams equal to the diagrams with one more generation");
+        p(progenies, "expanded progenies equal to the diagrams expanded before the layout");
+    }
+
+    private void expandAncestries(Gedcom gedcom, Person fulcrum, int[] settings) {
+        Graph taller = createGraph(gedcom, settings).maxAncestors(settings[0] + 1);
+        taller.startFrom(fulcrum);
+        Fixtures.place(taller);
+
+        Graph expanded = createGraph(gedcom, settings);
+        expanded.startFrom(fulcrum);
+        Fixtures.place(expanded);
+        Set<Family> top = new LinkedHashSet<>();
+        for (PersonNode personNode : expanded.getPersonNodes()) {
+            if (personNode.type == Card.ANCESTRY && !personNode.acquired && personNode.generation == -settings[0] - 1)
+                top.add(personNode.spouseFamily);
+        }
+        for (Family family : top) {
+            for (PersonNode personNode : expanded.getPersonNodes()) {
+                if (personNode.type == Card.ANCESTRY && !personNode.acquired && personNode.spouseFamily == family) {
+                    expanded.expand(personNode);
+                    Fixtures.measure(expanded.getNewPersonNodes());
+                    break;
+                }
+            }
+        }
+        expanded.initNodes();
+        expanded.placeNodes();
+
+        // Only the cards: a family without partners has no mini card to expand, so it keeps its little hearth
+        if (!Fixtures.describePersons(expanded, true).equals(Fixtures.describePersons(taller, true)))
+            throw new IllegalStateException("Expanded diagram of " + fulcrum.getId() + " differs with settings " + Arrays.toString(settings));
+    }
+
+    /**
+     * Expands the first mini progeny of the diagram, if any.
+     *
+     * @return True if a mini progeny has been expanded
+     */
+    private boolean expandProgeny(Gedcom gedcom, Person fulcrum, int[] settings) {
+        Graph expanded = createGraph(gedcom, settings);
+        expanded.startFrom(fulcrum);
+        Fixtures.place(expanded);
+        PersonNode mini = findProgeny(expanded);
+        if (mini == null)
+            return false;
+        Person child = mini.person;
+        Node parent = mini.origin;
+        Map<Person, Integer> siblings = new LinkedHashMap<>();
+        for (PersonNode personNode : expanded.getPersonNodes()) {
+            if (personNode.type == Card.PROGENY && personNode.origin == parent && personNode != mini)
+                siblings.put(personNode.person, 0);
+        }
+        int minis = countCards(expanded, child, Card.PROGENY);
+        for (Person sibling : siblings.keySet())
+            siblings.put(sibling, countCards(expanded, sibling, Card.PROGENY));
+        expanded.expand(mini);
+        Fixtures.measure(expanded.getNewPersonNodes());
+        expanded.initNodes();
+        expanded.placeNodes();
+
+        // The child loses its mini card for a regular one, that can be already elsewhere in the diagram,
+        // while the siblings keep their mini cards wherever the family appears
+        if (countCards(expanded, child, Card.PROGENY) >= minis || countCards(expanded, child, Card.REGULAR) == 0)
+            throw new IllegalStateException("Expanded progeny " + child.getId() + " of " + fulcrum.getId() + " is not regular with settings "
+                    + Arrays.toString(settings));
+        for (Map.Entry<Person, Integer> sibling : siblings.entrySet()) {
+            if (countCards(expanded, sibling.getKey(), Card.PROGENY) != sibling.getValue())
+                throw new IllegalStateException("Sibling " + sibling.getKey().getId() + " of the expanded progeny " + child.getId()
+                        + " of " + fulcrum.getId() + " has been expanded with settings " + Arrays.toString(settings));
+        }
+
+        Graph fresh = createGraph(gedcom, settings);
+        fresh.startFrom(fulcrum);
+        fresh.expand(findProgeny(fresh));
+        Fixtures.place(fresh);
+        if (!Fixtures.describe(expanded, true).equals(Fixtures.describe(fresh, true)))
+            throw new IllegalStateException("Expanded progeny " + child.getId() + " of " + fulcrum.getId() + " differs with settings "
+                    + Arrays.toString(settings));
+        return true;
+    }
+
+    // Without numbers the mini cards have no person nodes to expand
+    private Graph createGraph(Gedcom gedcom, int[] settings) {
+        return Fixtures.createGraph(gedcom, settings).displayNumbers(true);
+    }
+
+    private int countCards(Graph graph, Person person, Card type) {
+        int count = 0;
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            if (personNode.person == person && personNode.type == type)
+                count++;
+        }
+        return count;
+    }
+
+    private PersonNode findProgeny(Graph graph) {
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            if (personNode.type == Card.PROGENY && personNode.generation >= 0)
+                return personNode;
+        }
+        return null;
+    }
+}
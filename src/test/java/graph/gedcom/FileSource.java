@@ -0,0 +1,77 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.parser.JsonParser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking that GedcomFileSource gives the same records, counts and diagrams of a full parse of tree.ged.
+ */
+public class FileSource {
+
+    public static void main(String[] args) throws Exception {
+        new FileSource();
+    }
+
+    FileSource() throws Exception {
+        File file = new File("src/test/resources/tree.ged");
+        Gedcom full = Fixtures.parseTree();
+        GedcomFileSource source = new GedcomFileSource(file);
+        if (source.getPersonCount() != full.getPeople().size() || source.getFamilyCount() != full.getFamilies().size())
+            throw new IllegalStateException("Source of " + source.getPersonCount() + " persons and " + source.getFamilyCount()
+                    + " families instead of " + full.getPeople().size() + " and " + full.getFamilies().size());
+
+        // Records
+        List<String> personIds = new ArrayList<>();
+        for (Person person : full.getPeople())
+            personIds.add(person.getId());
+        List<String> familyIds = new ArrayList<>();
+        for (Family family : full.getFamilies())
+            familyIds.add(family.getId());
+        Gedcom fetched = new Gedcom();
+        fetched.setPeople(source.fetchPersons(personIds));
+        fetched.setFamilies(source.fetchFamilies(familyIds));
+        Gedcom parsed = new Gedcom();
+        parsed.setPeople(full.getPeople());
+        parsed.setFamilies(full.getFamilies());
+        if (!new JsonParser().toJson(fetched).equals(new JsonParser().toJson(parsed)))
+            throw new IllegalStateException("Records of the source differ from the full parse");
+        p(personIds.size(), "persons and", familyIds.size(), "families equal to the full parse");
+
+        // Ancestor and descendant counts
+        GedcomStatistics statistics = new GedcomIndex(full).getStatistics();
+        int[] ancestors = source.countAncestors(personIds);
+        int[] descendants = source.countDescendants(personIds);
+        for (int i = 0; i < personIds.size(); i++) {
+            Person person = full.getPeople().get(i);
+            if (ancestors[i] != statistics.countAncestors(person) || descendants[i] != statistics.countDescendants(person))
+                throw new IllegalStateException("Counts of " + person.getId() + " differ from the full parse");
+        }
+        p(personIds.size(), "ancestor and descendant counts equal");
+
+        // Diagrams, the mini cards counting all the relatives in the file
+        for (int[] settings : Fixtures.SETTINGS) {
+            Graph parsedGraph = Fixtures.createGraph(full, settings);
+            Graph sourceGraph = Fixtures.createGraph(full, settings);
+            for (Person fulcrum : full.getPeople()) {
+                parsedGraph.startFrom(fulcrum);
+                Fixtures.place(parsedGraph);
+                sourceGraph.startFrom(source, fulcrum.getId());
+                Fixtures.place(sourceGraph);
+                if (!Fixtures.describe(sourceGraph, true).equals(Fixtures.describe(parsedGraph, true)))
+                    throw new IllegalStateException("Diagram of " + fulcrum.getId() + " differs from the full parse with settings "
+                            + Arrays.toString(settings));
+            }
+        }
+        p(full.getPeople().size() * Fixtures.SETTINGS.length, "diagrams equal,", source.getParsedPersonCount(),
+                "persons parsed by the source");
+    }
+}
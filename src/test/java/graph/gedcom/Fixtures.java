@@ -0,0 +1,105 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.parser.ModelParser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trees, card sizes and descriptions of the diagrams shared by the scenarios.
+ */
+class Fixtures {
+
+    // Ancestors, great-uncles, spouses, descendants, siblings and nephews, uncles and cousins, numbers
+    static final int[][] SETTINGS = {{3, 2, 1, 3, 2, 2, 1}, {1, 1, 1, 1, 1, 1, 0}, {0, 0, 1, 2, 1, 1, 1}, {2, 2, 0, 2, 2, 2, 0},
+            {4, 1, 1, 0, 0, 0, 1}};
+
+    static Gedcom parseTree() throws Exception {
+        Gedcom gedcom = new ModelParser().parseGedcom(new File("src/test/resources/tree.ged"));
+        gedcom.createIndexes();
+        return gedcom;
+    }
+
+    /**
+     * A generated tree with remarriages, pedigree collapse and married siblings.
+     */
+    static Gedcom generate(long seed, int persons) {
+        return new TreeGenerator().seed(seed).persons(persons).remarriageRate(0.2F).collapseRate(0.1F).marriedSiblingsRate(0.05F)
+                .generate();
+    }
+
+    /**
+     * @return tree.ged followed by generated trees of 3000 persons with seeds from 1 to 'generated'
+     */
+    static List<Gedcom> gedcoms(int generated) throws Exception {
+        List<Gedcom> gedcoms = new ArrayList<>();
+        gedcoms.add(parseTree());
+        for (int seed = 1; seed <= generated; seed++)
+            gedcoms.add(generate(seed, 3000));
+        return gedcoms;
+    }
+
+    /**
+     * @param settings One of SETTINGS
+     */
+    static Graph createGraph(Gedcom gedcom, int[] settings) {
+        Graph graph = new Graph();
+        graph.setGedcom(gedcom).maxAncestors(settings[0]).maxGreatUncles(settings[1]).displaySpouses(settings[2] == 1)
+                .maxDescendants(settings[3]).maxSiblingsNephews(settings[4]).maxUnclesCousins(settings[5])
+                .displayNumbers(settings[6] == 1).displayDuplicateLines(true);
+        return graph;
+    }
+
+    /**
+     * Sizes depending only on the person, as the cards of a real diagram.
+     */
+    static void measure(List<PersonNode> personNodes) {
+        for (PersonNode personNode : personNodes) {
+            int hash = Math.abs(personNode.person.getId().hashCode());
+            personNode.width = personNode.mini ? 30 : 80 + hash % 60;
+            personNode.height = personNode.mini ? 30 : 60 + hash / 7 % 50;
+        }
+    }
+
+    /**
+     * Measures all the cards and places the diagram prepared by startFrom().
+     */
+    static void place(Graph graph) {
+        measure(graph.getPersonNodes());
+        graph.initNodes();
+        graph.placeNodes();
+    }
+
+    /**
+     * The exact positions of the cards, in an order independent from the building of the diagram.
+     *
+     * @param amounts False to leave out the numbers of the mini cards
+     */
+    static String describePersons(Graph graph, boolean amounts) {
+        List<String> persons = new ArrayList<>();
+        for (PersonNode personNode : graph.getPersonNodes())
+            persons.add(personNode.person.getId() + " " + personNode.type + " " + personNode.generation + " " + personNode.duplicate
+                    + " " + personNode.dead + " " + (amounts ? personNode.amount : "") + " " + personNode.x + " " + personNode.y
+                    + " " + personNode.width + " " + personNode.height);
+        Collections.sort(persons);
+        return persons.toString();
+    }
+
+    /**
+     * The exact positions of cards, bonds and duplicate lines, and the size of the diagram.
+     */
+    static String describe(Graph graph, boolean amounts) {
+        List<String> bonds = new ArrayList<>();
+        for (Bond bond : graph.getBonds())
+            bonds.add(bond.x + " " + bond.y + " " + bond.width + " " + bond.height);
+        Collections.sort(bonds);
+        List<String> lines = new ArrayList<>();
+        for (DuplicateLine line : graph.getDuplicateLines())
+            lines.add(line.x1 + " " + line.y1 + " " + line.x2 + " " + line.y2);
+        Collections.sort(lines);
+        return describePersons(graph, amounts) + " " + bonds + " " + lines + " " + graph.getWidth() + " " + graph.getHeight();
+    }
+}
@@ -0,0 +1,151 @@
+package graph.gedcom;
+
+import org.apache.commons.io.FileUtils;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking the diagrams of tree.ged and of generated trees against the hashes of their descriptions saved
+ * in layouts.txt, so that a rewrite of the layout can't change them unnoticed. Each diagram is also prepared in the
+ * other ways that must give the same layout, and placed again after some cards changed size.
+ * Run with 'write' as argument to save the hashes of the current code, when a change of the diagrams is intended.
+ */
+public class Layouts {
+
+    private static final File FILE = new File("src/test/resources/layouts.txt");
+
+    public static void main(String[] args) throws Exception {
+        new Layouts(args.length > 0 && args[0].equals("write"));
+    }
+
+    Layouts(boolean write) throws Exception {
+        List<String> hashes = new ArrayList<>();
+        List<Gedcom> gedcoms = Fixtures.gedcoms(2);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int g = 0; g < gedcoms.size(); g++) {
+            Gedcom gedcom = gedcoms.get(g);
+            GedcomSource source = new GedcomSource(gedcom);
+            for (int s = 0; s < Fixtures.SETTINGS.length; s++) {
+                int[] settings = Fixtures.SETTINGS[s];
+                // Graphs kept from a fulcrum to the next
+                Graph recentered = Fixtures.createGraph(gedcom, settings);
+                LayoutCache cache = new LayoutCache(100, false);
+                Graph cached = Fixtures.createGraph(gedcom, settings).setLayoutCache(cache);
+                LayoutCache loadedCache = new LayoutCache(100, false);
+                Graph loaded = Fixtures.createGraph(gedcom, settings).setLayoutCache(loadedCache);
+                List<Person> people = gedcom.getPeople();
+                for (Person fulcrum : people.subList(0, Math.min(30, people.size()))) {
+                    String diagram = g + " " + fulcrum.getId() + " " + s;
+                    Graph graph = Fixtures.createGraph(gedcom, settings);
+                    graph.startFrom(fulcrum);
+                    Fixtures.place(graph);
+                    String layout = Fixtures.describe(graph, true);
+                    checkMembership(graph, diagram);
+
+                    recentered.recenterTo(fulcrum);
+                    Fixtures.measure(recentered.getNewPersonNodes());
+                    recentered.initNodes();
+                    recentered.placeNodes();
+                    check(Fixtures.describe(recentered, true), layout, "recentered", diagram);
+
+                    Graph parallel = Fixtures.createGraph(gedcom, settings).setForkJoinPool(pool);
+                    parallel.startFrom(fulcrum);
+                    Fixtures.place(parallel);
+                    check(Fixtures.describe(parallel, true), layout, "parallel", diagram);
+
+                    Graph measured = Fixtures.createGraph(gedcom, settings).collectLayoutStats(true);
+                    measured.startFrom(fulcrum);
+                    Fixtures.place(measured);
+                    check(Fixtures.describe(measured, true), layout, "measured", diagram);
+
+                    // The second placement is restored from the cache
+                    int hits = cache.getHits();
+                    for (int i = 0; i < 2; i++) {
+                        cached.startFrom(fulcrum);
+                        Fixtures.place(cached);
+                        check(Fixtures.describe(cached, true), layout, "cached", diagram);
+                    }
+                    check(String.valueOf(cache.getHits()), String.valueOf(hits + 1), "cache hits", diagram);
+
+                    // Loaded again from the records already fetched, and restored from the cache
+                    hits = loadedCache.getHits();
+                    for (int i = 0; i < 2; i++) {
+                        loaded.startFrom(source, fulcrum.getId());
+                        Fixtures.place(loaded);
+                        check(Fixtures.describe(loaded, true), layout, "loaded", diagram);
+                    }
+                    check(String.valueOf(loadedCache.getHits()), String.valueOf(hits + 1), "loaded cache hits", diagram);
+
+                    graph.placeNodes();
+                    check(Fixtures.describe(graph, true), layout, "placed again", diagram);
+
+                    List<PersonNode> personNodes = graph.getPersonNodes();
+                    for (int i = 0; i < personNodes.size(); i += 4) {
+                        PersonNode personNode = personNodes.get(i);
+                        graph.resizeNode(personNode, personNode.width + 40, personNode.height + 20);
+                    }
+                    graph.placeResizedNodes();
+                    String resized = Fixtures.describe(graph, true);
+                    hashes.add(diagram + " " + Integer.toHexString(layout.hashCode()) + " " + Integer.toHexString(resized.hashCode()));
+                }
+            }
+        }
+        pool.shutdown();
+        if (write) {
+            FileUtils.writeLines(FILE, "UTF-8", hashes);
+            p(hashes.size(), "layouts written");
+            return;
+        }
+        List<String> saved = FileUtils.readLines(FILE, "UTF-8");
+        for (int i = 0; i < Math.max(hashes.size(), saved.size()); i++) {
+            String hash = i < hashes.size() ? hashes.get(i) : null;
+            String expected = i < saved.size() ? saved.get(i) : null;
+            if (hash == null || !hash.equals(expected))
+                throw new IllegalStateException("Layout " + hash + " differs from the saved " + expected);
+        }
+        p(hashes.size(), "layouts equal to the saved ones, also recentered, parallel, measured, cached and loaded");
+    }
+
+    private void check(String description, String expected, String variant, String diagram) {
+        if (!description.equals(expected))
+            throw new IllegalStateException("Layout " + variant + " of diagram " + diagram + " differs");
+    }
+
+    // Node.hasOrigin() and Union.hasDescendant() give the same answers as a scan of the lists
+    private void checkMembership(Graph graph, String diagram) {
+        Set<Node> nodes = new LinkedHashSet<>();
+        Set<Union> unions = new LinkedHashSet<>();
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            nodes.add(personNode);
+            if (personNode.familyNode != null)
+                nodes.add(personNode.familyNode);
+        }
+        for (Node node : nodes) {
+            if (node.union != null)
+                unions.add(node.union);
+        }
+        for (Node node : nodes) {
+            for (Node other : nodes) {
+                boolean contained = node.origins != null && node.origins.contains(other);
+                if (node.hasOrigin(other) != contained)
+                    throw new IllegalStateException("Origins of diagram " + diagram + " differ");
+            }
+        }
+        for (Union union : unions) {
+            for (Union other : unions) {
+                boolean contained = union.descendants != null && union.descendants.contains(other);
+                if (union.hasDescendant(other) != contained)
+                    throw new IllegalStateException("Descendants of diagram " + diagram + " differ");
+            }
+        }
+    }
+}
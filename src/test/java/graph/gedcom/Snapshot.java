@@ -0,0 +1,148 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking that a snapshot created by Graph.createSnapshot() and reloaded by DiagramSnapshot.wrap() and map()
+ * gives back the placed diagram, on tree.ged and on a generated tree with all the settings of the fixtures.
+ */
+public class Snapshot {
+
+    public static void main(String[] args) throws Exception {
+        new Snapshot();
+    }
+
+    Snapshot() throws Exception {
+        int diagrams = 0;
+        Graph graph = null;
+        Person fulcrum = null;
+        for (Gedcom gedcom : Fixtures.gedcoms(1)) {
+            for (int[] settings : Fixtures.SETTINGS) {
+                graph = Fixtures.createGraph(gedcom, settings);
+                graph.setMaxBitmapSize(500); // Many tiles of lines
+                List<Person> people = gedcom.getPeople();
+                for (int i = 0; i < Math.min(30, people.size()); i++) {
+                    fulcrum = people.get(i);
+                    graph.startFrom(fulcrum);
+                    Fixtures.place(graph);
+                    compare(graph, DiagramSnapshot.wrap(graph.createSnapshot()), fulcrum);
+                    diagrams++;
+                }
+            }
+            // The same snapshot saved in a file and memory-mapped
+            File file = File.createTempFile("snapshot", ".bin");
+            try {
+                ByteBuffer buffer = graph.createSnapshot();
+                FileOutputStream output = new FileOutputStream(file);
+                output.write(buffer.array(), 0, buffer.limit());
+                output.close();
+                compare(graph, DiagramSnapshot.map(file), fulcrum);
+            } finally {
+                file.delete();
+            }
+        }
+        ByteBuffer truncated = graph.createSnapshot();
+        truncated.limit(truncated.limit() - 1);
+        refuse(truncated, "Truncated");
+        ByteBuffer negative = graph.createSnapshot();
+        negative.order(ByteOrder.LITTLE_ENDIAN).putInt(32, -1); // Bond count
+        refuse(negative, "Negative");
+        ByteBuffer overflowing = graph.createSnapshot();
+        overflowing.order(ByteOrder.LITTLE_ENDIAN).putInt(28, 1 << 27); // Node section of 2^32 bytes, 0 in int
+        refuse(overflowing, "Overflowing");
+        p(diagrams, "snapshots equal to their diagrams");
+    }
+
+    private void refuse(ByteBuffer buffer, String what) {
+        try {
+            DiagramSnapshot.wrap(buffer);
+            throw new IllegalStateException(what + " snapshot accepted");
+        } catch (IllegalArgumentException e) {
+            p(what, "snapshot refused:", e.getMessage());
+        }
+    }
+
+    private void compare(Graph graph, DiagramSnapshot snapshot, Person fulcrum) {
+        check(snapshot.getVersion() == DiagramSnapshot.VERSION && snapshot.getWidth() == graph.getWidth()
+                && snapshot.getHeight() == graph.getHeight() && snapshot.getBiggestPathSize() == graph.getBiggestPathSize(), "header", fulcrum);
+
+        List<PersonNode> personNodes = graph.getPersonNodes();
+        check(snapshot.getNodeCount() == personNodes.size(), "node count", fulcrum);
+        for (int i = 0; i < personNodes.size(); i++) {
+            PersonNode personNode = personNodes.get(i);
+            String familyId = personNode.spouseFamily != null ? personNode.spouseFamily.getId() : null;
+            check(snapshot.getNodeX(i) == personNode.x && snapshot.getNodeY(i) == personNode.y
+                    && snapshot.getNodeWidth(i) == personNode.width && snapshot.getNodeHeight(i) == personNode.height
+                    && GeometryBuffers.getCard(snapshot.getNodeFlags(i)) == personNode.type && snapshot.getNodeAmount(i) == personNode.amount
+                    && personNode.person.getId().equals(snapshot.getPersonId(i)) && equal(familyId, snapshot.getSpouseFamilyId(i)),
+                    "node " + personNode.person.getId(), fulcrum);
+        }
+
+        List<Bond> bonds = graph.getBonds();
+        check(snapshot.getBondCount() == bonds.size(), "bond count", fulcrum);
+        for (int i = 0; i < bonds.size(); i++) {
+            Bond bond = bonds.get(i);
+            check(snapshot.getBondX(i) == bond.x && snapshot.getBondY(i) == bond.y && snapshot.getBondWidth(i) == bond.width
+                    && snapshot.getBondHeight(i) == bond.height && equal(bond.marriageDate, snapshot.getMarriageDate(i)), "bond " + i, fulcrum);
+        }
+
+        // Continuous lines and back lines, each one once also if in more tiles, then duplicate lines
+        Set<Line> lines = Collections.newSetFromMap(new IdentityHashMap<Line, Boolean>());
+        for (Set<Line> tile : graph.getLines())
+            lines.addAll(tile);
+        for (Set<Line> tile : graph.getBackLines())
+            lines.addAll(tile);
+        List<DuplicateLine> duplicateLines = graph.getDuplicateLines();
+        check(snapshot.getLineCount() == lines.size() + duplicateLines.size(), "line count", fulcrum);
+        for (int i = 0; i < duplicateLines.size(); i++) {
+            DuplicateLine line = duplicateLines.get(i);
+            int index = lines.size() + i;
+            check(equal(snapshot, index, line) && snapshot.getLineCoordinate(index, 4) == line.x3
+                    && snapshot.getLineCoordinate(index, 5) == line.y3, "duplicate line " + i, fulcrum);
+        }
+        compareTiles(graph.getLines(), snapshot, false, fulcrum);
+        compareTiles(graph.getBackLines(), snapshot, true, fulcrum);
+    }
+
+    private void compareTiles(List<Set<Line>> tiles, DiagramSnapshot snapshot, boolean back, Person fulcrum) {
+        check(snapshot.getLineTileCount(back) == tiles.size(), "tile count", fulcrum);
+        for (int t = 0; t < tiles.size(); t++) {
+            LineTile tile = (LineTile)tiles.get(t);
+            check(snapshot.getLineTileSize(back, t) == tile.size() && snapshot.getLineTileBound(back, t, 0) == tile.left
+                    && snapshot.getLineTileBound(back, t, 1) == tile.top && snapshot.getLineTileBound(back, t, 2) == tile.right
+                    && snapshot.getLineTileBound(back, t, 3) == tile.bottom, "tile " + t, fulcrum);
+            int position = 0;
+            for (Line line : tile) {
+                int index = snapshot.getLineTileLine(back, t, position++);
+                check(equal(snapshot, index, line) && (!back || snapshot.getLineKind(index) == GeometryBuffers.BACK_LINE),
+                        "line of tile " + t, fulcrum);
+            }
+        }
+    }
+
+    private boolean equal(DiagramSnapshot snapshot, int index, Line line) {
+        return snapshot.getLineCoordinate(index, 0) == line.x1 && snapshot.getLineCoordinate(index, 1) == line.y1
+                && snapshot.getLineCoordinate(index, 2) == line.x2 && snapshot.getLineCoordinate(index, 3) == line.y2;
+    }
+
+    private boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private void check(boolean condition, String what, Person fulcrum) {
+        if (!condition)
+            throw new IllegalStateException("Snapshot of " + fulcrum.getId() + " differs in " + what);
+    }
+}
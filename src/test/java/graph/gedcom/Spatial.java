@@ -0,0 +1,145 @@
+package graph.gedcom;
+
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Person;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static graph.gedcom.Util.p;
+
+/**
+ * Scenario checking the answers of the spatial index against a scan of all the elements of the diagram,
+ * on tree.ged and on a generated tree with all the settings of the fixtures.
+ */
+public class Spatial {
+
+    public static void main(String[] args) throws Exception {
+        new Spatial();
+    }
+
+    Spatial() throws Exception {
+        Random random = new Random(1);
+        int queries = 0;
+        for (Gedcom gedcom : Fixtures.gedcoms(1)) {
+            for (int[] settings : Fixtures.SETTINGS) {
+                Graph graph = Fixtures.createGraph(gedcom, settings);
+                graph.setMaxBitmapSize(500);
+                List<Person> people = gedcom.getPeople();
+                for (Person fulcrum : people.subList(0, Math.min(40, people.size()))) {
+                    graph.startFrom(fulcrum);
+                    Fixtures.place(graph);
+                    SpatialIndex index = graph.createSpatialIndex();
+                    List<Line> lines = getAllLines(graph);
+                    for (int i = 0; i < 50; i++) {
+                        // Points and rectangles also around the diagram
+                        float x = random.nextFloat() * (graph.getWidth() + 200) - 100;
+                        float y = random.nextFloat() * (graph.getHeight() + 200) - 100;
+                        float right = x + random.nextFloat() * 400;
+                        float bottom = y + random.nextFloat() * 300;
+                        check(index, graph, lines, x, y, right, bottom, fulcrum);
+                        queries++;
+                    }
+                }
+            }
+        }
+        p(queries, "spatial queries equal to the scan of the diagrams");
+    }
+
+    // Continuous lines and back lines, each one once also if in more tiles, and duplicate lines
+    private List<Line> getAllLines(Graph graph) {
+        Set<Line> lines = Collections.newSetFromMap(new IdentityHashMap<Line, Boolean>());
+        for (Set<Line> tile : graph.getLines())
+            lines.addAll(tile);
+        for (Set<Line> tile : graph.getBackLines())
+            lines.addAll(tile);
+        List<Line> allLines = new ArrayList<Line>(lines);
+        allLines.addAll(graph.getDuplicateLines());
+        return allLines;
+    }
+
+    private void check(SpatialIndex index, Graph graph, List<Line> lines, float x, float y, float right, float bottom, Person fulcrum) {
+        // Point queries
+        PersonNode inside = null;
+        PersonNode nearest = null;
+        float nearestDistance = Float.MAX_VALUE;
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            float distance = distance(personNode, x, y);
+            if (distance == 0)
+                inside = personNode;
+            if (distance < nearestDistance) {
+                nearest = personNode;
+                nearestDistance = distance;
+            }
+        }
+        PersonNode found = index.nodeAt(x, y);
+        if (found == null ? inside != null : distance(found, x, y) != 0)
+            fail("nodeAt", x, y, fulcrum);
+        found = index.nearest(x, y);
+        if (found == null ? nearest != null : Math.abs(distance(found, x, y) - nearestDistance) > 0.001)
+            fail("nearest", x, y, fulcrum);
+        Bond insideBond = null;
+        for (Bond bond : graph.getBonds()) {
+            if (distance(bond, x, y) == 0)
+                insideBond = bond;
+        }
+        Bond foundBond = index.bondAt(x, y);
+        if (foundBond == null ? insideBond != null : distance(foundBond, x, y) != 0)
+            fail("bondAt", x, y, fulcrum);
+
+        // Rectangle queries, also through the viewport of the graph
+        List<PersonNode> personNodes = new ArrayList<>();
+        for (PersonNode personNode : graph.getPersonNodes()) {
+            if (intersects(personNode.x, personNode.y, personNode.x + personNode.width, personNode.y + personNode.height, x, y, right, bottom))
+                personNodes.add(personNode);
+        }
+        List<Bond> bonds = new ArrayList<>();
+        for (Bond bond : graph.getBonds()) {
+            if (intersects(bond.x, bond.y, bond.x + bond.width, bond.y + bond.height, x, y, right, bottom))
+                bonds.add(bond);
+        }
+        List<Line> rectangleLines = new ArrayList<>();
+        for (Line line : lines) {
+            if (intersects(line.getLeft(), line.getTop(), line.getRight(), line.getBottom(), x, y, right, bottom))
+                rectangleLines.add(line);
+        }
+        List<PersonNode> foundNodes = new ArrayList<>();
+        index.queryNodes(x, y, right, bottom, foundNodes);
+        List<Bond> foundBonds = new ArrayList<>();
+        index.queryBonds(x, y, right, bottom, foundBonds);
+        List<Line> foundLines = new ArrayList<>();
+        index.queryLines(x, y, right, bottom, foundLines);
+        if (!sameElements(foundNodes, personNodes) || !sameElements(foundBonds, bonds) || !sameElements(foundLines, rectangleLines))
+            fail("query", x, y, fulcrum);
+        graph.findInViewport(x, y, right, bottom, foundNodes, foundBonds, foundLines);
+        if (!sameElements(foundNodes, personNodes) || !sameElements(foundBonds, bonds) || !sameElements(foundLines, rectangleLines))
+            fail("findInViewport", x, y, fulcrum);
+    }
+
+    // Distance of the point from the rectangle of the metric, 0 if inside
+    private float distance(Metric metric, float x, float y) {
+        float dx = Math.max(Math.max(metric.x - x, x - metric.x - metric.width), 0);
+        float dy = Math.max(Math.max(metric.y - y, y - metric.y - metric.height), 0);
+        return (float)Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private boolean intersects(float left, float top, float right, float bottom, float x, float y, float queryRight, float queryBottom) {
+        return left <= queryRight && right >= x && top <= queryBottom && bottom >= y;
+    }
+
+    // Same elements, each one once
+    private boolean sameElements(Collection<?> found, Collection<?> expected) {
+        Set<Object> elements = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        elements.addAll(found);
+        return elements.size() == found.size() && found.size() == expected.size() && elements.containsAll(expected);
+    }
+
+    private void fail(String query, float x, float y, Person fulcrum) {
+        throw new IllegalStateException("Spatial index of " + fulcrum.getId() + " wrong in " + query + " at " + x + ", " + y);
+    }
+}
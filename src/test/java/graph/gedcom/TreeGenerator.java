@@ -0,0 +1,288 @@
+package graph.gedcom;
+
+import graph.gedcom.Util.Gender;
+import org.folg.gedcom.model.ChildRef;
+import org.folg.gedcom.model.EventFact;
+import org.folg.gedcom.model.Family;
+import org.folg.gedcom.model.Gedcom;
+import org.folg.gedcom.model.Name;
+import org.folg.gedcom.model.ParentFamilyRef;
+import org.folg.gedcom.model.Person;
+import org.folg.gedcom.model.SpouseFamilyRef;
+import org.folg.gedcom.model.SpouseRef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded generator of synthetic genealogical trees, to drive the graph with large and pathological inputs.
+ * The tree grows generation by generation from a couple of founders, so every person married inside the tree produces pedigree collapse.
+ * The same settings and seed always produce the same tree.
+ */
+public class TreeGenerator {
+
+    // Settings with default values
+    private long seed = 1;
+    private int persons = 1000; // Total number of persons to create
+    private float fanOut = 2.5F; // Average number of children of each family
+    private float remarriageRate = 0.1F; // Probability that a person has one or more further marriages
+    private float collapseRate = 0.05F; // Probability that a person marries someone of the same generation already in the tree
+    private float marriedSiblingsRate = 0.01F; // Probability that a person marries a sibling
+    private float missingSpouseRate = 0.1F; // Probability that a family has one partner only
+    private float inLawParentsRate = 0.3F; // Probability that a spouse coming from outside the tree has their own parents
+
+    private Random random;
+    private Gedcom gedcom;
+    private List<List<Person>> generations;
+    private Map<Person, Integer> personGenerations;
+    private Map<Person, List<Person>> siblings; // Each child with all the children of the same family
+    private Set<Person> married; // Persons of the actual generation already married
+    private int personId, familyId;
+
+    public TreeGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public TreeGenerator persons(int num) {
+        persons = num;
+        return this;
+    }
+
+    public TreeGenerator fanOut(float children) {
+        fanOut = children;
+        return this;
+    }
+
+    public TreeGenerator remarriageRate(float rate) {
+        remarriageRate = rate;
+        return this;
+    }
+
+    public TreeGenerator collapseRate(float rate) {
+        collapseRate = rate;
+        return this;
+    }
+
+    public TreeGenerator marriedSiblingsRate(float rate) {
+        marriedSiblingsRate = rate;
+        return this;
+    }
+
+    public TreeGenerator missingSpouseRate(float rate) {
+        missingSpouseRate = rate;
+        return this;
+    }
+
+    public TreeGenerator inLawParentsRate(float rate) {
+        inLawParentsRate = rate;
+        return this;
+    }
+
+    /**
+     * Creates a new tree with the current settings.
+     *
+     * @return The Gedcom model with indexes already created
+     */
+    public Gedcom generate() {
+        random = new Random(seed);
+        gedcom = new Gedcom();
+        generations = new ArrayList<>();
+        personGenerations = new HashMap<>();
+        siblings = new HashMap<>();
+        personId = 0;
+        familyId = 0;
+        List<Person> current = new ArrayList<>();
+        current.add(createPerson(true, 0));
+        current.add(createPerson(false, 0));
+        generations.add(current);
+        while (gedcom.getPeople().size() < persons) {
+            List<Person> next = new ArrayList<>();
+            List<Person> singles = new ArrayList<>(current);
+            married = new HashSet<>();
+            while (!singles.isEmpty() && gedcom.getPeople().size() < persons) {
+                Person person = removeAt(singles, random.nextInt(singles.size()));
+                if (!married.add(person)) // Already chosen as spouse
+                    continue;
+                marry(person, findSpouse(person, singles), next);
+                // Further marriages always with someone from outside the tree
+                if (random.nextFloat() < remarriageRate) {
+                    int marriages = 1 + random.nextInt(3);
+                    for (int i = 0; i < marriages && gedcom.getPeople().size() < persons; i++)
+                        marry(person, random.nextFloat() < missingSpouseRate ? null : createOutsider(person), next);
+                }
+            }
+            if (next.isEmpty()) { // Extinct generation: a new couple of founders restarts the tree
+                next.add(createPerson(true, generations.size()));
+                next.add(createPerson(false, generations.size()));
+            }
+            generations.add(next);
+            current = next;
+        }
+        gedcom.createIndexes();
+        return gedcom;
+    }
+
+    /**
+     * @return A person of the middle generation of the last generated tree, preferably with parents, spouses and children
+     */
+    public Person getFulcrum() {
+        Person fallback = null;
+        for (int gen = generations.size() / 2; gen >= 0; gen--) {
+            for (Person person : generations.get(gen)) {
+                if (!person.getParentFamilyRefs().isEmpty() && !person.getSpouseFamilyRefs().isEmpty()) {
+                    for (Family family : person.getSpouseFamilies(gedcom)) {
+                        if (!family.getChildRefs().isEmpty())
+                            return person;
+                    }
+                    if (fallback == null)
+                        fallback = person;
+                }
+            }
+        }
+        return fallback != null ? fallback : gedcom.getPeople().get(0);
+    }
+
+    /**
+     * @return Number of generations of the last generated tree
+     */
+    public int getGenerations() {
+        return generations.size();
+    }
+
+    /**
+     * Chooses the first spouse of a person: a sibling, someone else of the same generation, a new person or nobody.
+     *
+     * @param singles Persons of the same generation, possibly already married
+     */
+    private Person findSpouse(Person person, List<Person> singles) {
+        boolean male = Gender.isMale(person);
+        float chance = random.nextFloat();
+        if (chance < marriedSiblingsRate) {
+            List<Person> brothers = siblings.get(person);
+            if (brothers != null) {
+                for (Person sibling : brothers) {
+                    if (Gender.isMale(sibling) != male && married.add(sibling))
+                        return sibling;
+                }
+            }
+        } else if (chance < marriedSiblingsRate + collapseRate && !singles.isEmpty()) {
+            for (int i = 0; i < 10; i++) { // Some attempts to find an unmarried person of the opposite sex
+                Person single = singles.get(random.nextInt(singles.size()));
+                if (Gender.isMale(single) != male && married.add(single))
+                    return single;
+            }
+        } else if (chance < marriedSiblingsRate + collapseRate + missingSpouseRate) {
+            return null;
+        }
+        return createOutsider(person);
+    }
+
+    /**
+     * Creates a spouse of opposite sex coming from outside the tree, possibly with their own parents.
+     */
+    private Person createOutsider(Person partner) {
+        int generation = getGeneration(partner);
+        Person outsider = createPerson(!Gender.isMale(partner), generation);
+        if (random.nextFloat() < inLawParentsRate) {
+            Family family = createFamily();
+            addSpouse(family, createPerson(true, generation - 1), true);
+            addSpouse(family, createPerson(false, generation - 1), false);
+            addChild(family, outsider);
+        }
+        return outsider;
+    }
+
+    /**
+     * Creates a family with one or two partners, and their children added to the next generation.
+     */
+    private void marry(Person person, Person spouse, List<Person> nextGeneration) {
+        Family family = createFamily();
+        boolean male = Gender.isMale(person);
+        addSpouse(family, person, male);
+        if (spouse != null)
+            addSpouse(family, spouse, !male);
+        if (random.nextFloat() < 0.3F) {
+            EventFact marriage = new EventFact();
+            marriage.setTag("MARR");
+            marriage.setDate(random.nextInt(28) + 1 + " JUN " + (1500 + getGeneration(person) * 25 + random.nextInt(10)));
+            family.addEventFact(marriage);
+        }
+        int children = Math.round(random.nextFloat() * fanOut * 2);
+        List<Person> brothers = new ArrayList<>();
+        for (int i = 0; i < children && gedcom.getPeople().size() < persons; i++) {
+            Person child = createPerson(random.nextBoolean(), getGeneration(person) + 1);
+            addChild(family, child);
+            nextGeneration.add(child);
+            brothers.add(child);
+            siblings.put(child, brothers);
+        }
+    }
+
+    private Person createPerson(boolean male, int generation) {
+        Person person = new Person();
+        person.setId("I" + ++personId);
+        Name name = new Name();
+        name.setValue((male ? "John" : "Mary") + personId + " /Gen" + generation + "/");
+        person.addName(name);
+        EventFact sex = new EventFact();
+        sex.setTag("SEX");
+        sex.setValue(male ? "M" : "F");
+        person.addEventFact(sex);
+        if (random.nextFloat() < 0.5F) {
+            EventFact death = new EventFact();
+            death.setTag("DEAT");
+            person.addEventFact(death);
+        }
+        gedcom.addPerson(person);
+        personGenerations.put(person, generation);
+        return person;
+    }
+
+    private Family createFamily() {
+        Family family = new Family();
+        family.setId("F" + ++familyId);
+        gedcom.addFamily(family);
+        return family;
+    }
+
+    private void addSpouse(Family family, Person person, boolean husband) {
+        SpouseRef spouseRef = new SpouseRef();
+        spouseRef.setRef(person.getId());
+        if (husband)
+            family.addHusband(spouseRef);
+        else
+            family.addWife(spouseRef);
+        SpouseFamilyRef familyRef = new SpouseFamilyRef();
+        familyRef.setRef(family.getId());
+        person.addSpouseFamilyRef(familyRef);
+    }
+
+    private void addChild(Family family, Person child) {
+        ChildRef childRef = new ChildRef();
+        childRef.setRef(child.getId());
+        family.addChild(childRef);
+        ParentFamilyRef familyRef = new ParentFamilyRef();
+        familyRef.setRef(family.getId());
+        child.addParentFamilyRef(familyRef);
+    }
+
+    /**
+     * Removes in constant time an item from the list, changing the order of the list.
+     */
+    private static Person removeAt(List<Person> list, int index) {
+        Person removed = list.get(index);
+        list.set(index, list.get(list.size() - 1));
+        list.remove(list.size() - 1);
+        return removed;
+    }
+
+    private int getGeneration(Person person) {
+        return personGenerations.get(person);
+    }
+}